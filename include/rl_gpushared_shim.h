@@ -0,0 +1,623 @@
+// rl_gpushared_shim.h
+// Shared region layout, shared by the JNI shim and external renderers.
+#pragma once
+
+#include <atomic>
+#include <chrono>
+#include <cstddef>
+#include <cstdint>
+#include <cstring>
+
+extern "C" {
+#define RL_MAGIC 0x4C525255 // "URRL"
+#define RL_VERSION_MAJOR 2  // bumped when an existing section changes incompatibly
+#define RL_VERSION_MINOR 12 // bumped when sections or trailing fields are added
+#define RL_SECTION_ALIGNMENT 64
+#define RL_MAX_SECTIONS 16
+
+enum RLSectionId : uint32_t {
+    RL_SECTION_CAMERA = 1,     // RLCameraStatus
+    RL_SECTION_FRAMES = 2,     // RLFrameRing
+    RL_SECTION_INPUT = 3,      // SInputRing
+    RL_SECTION_RESOLUTION = 4, // SResolution
+    RL_SECTION_SIGNALS = 5,    // RLSignals
+    RL_SECTION_PREVIEW = 6,    // RLPreviewSection, optional
+    RL_SECTION_CAMERA_RING = 7, // RLCameraRing
+    RL_SECTION_GEOMETRY = 8,    // RLGeometrySection, optional
+};
+
+struct RLSectionEntry {
+    uint32_t id;        // RLSectionId
+    uint32_t alignment; // alignment of offset, RL_SECTION_ALIGNMENT
+    uint64_t offset;    // from the start of the region
+    uint64_t length;    // bytes, may grow within a major version
+};
+
+/**
+ * Region header at offset 0, written by RuneLite (SharedRegionLayout.java).
+ *
+ * RuneLite clears magic, writes the section table and initializes every section, then publishes magic with a
+ * release store. A reader checks magic and version_major, then finds each section it knows by id and ignores the
+ * rest, so new sections can be added without releasing both sides in lockstep.
+ */
+struct RLRegionHeader {
+    volatile uint32_t magic; // RL_MAGIC once the region is initialized
+    uint16_t version_major;
+    uint16_t version_minor;
+    uint32_t header_size;   // bytes, including the section table
+    uint32_t section_count;
+    uint64_t total_size;    // bytes in the whole region
+    uint8_t reserved[40];
+    RLSectionEntry sections[RL_MAX_SECTIONS];
+};
+
+// POD structs with fixed layout for predictable offsets
+#pragma pack(push, 1)
+struct RLCameraState {
+    int x;
+    int y;
+    int z;
+    int yaw;
+    int pitch;
+    int scale;
+};
+
+/**
+ * Latched seqlock, written by RuneLite (CameraStatus.java).
+ *
+ * copies[sequence & 1] is never being written, so a reader takes a consistent snapshot without a lock:
+ *   do { s = acquire-load sequence; state = copies[s & 1]; acquire fence; } while (sequence != s);
+ * The loop only repeats if RuneLite published a new camera during the 24-byte copy.
+ */
+struct RLCameraStatus {
+    volatile int64_t sequence;
+    RLCameraState copies[2];
+};
+
+static inline RLCameraState rl_read_camera(const RLCameraStatus *camera) {
+    RLCameraState state;
+    int64_t seq;
+    do {
+        seq = camera->sequence;
+        std::atomic_thread_fence(std::memory_order_acquire);
+        state = camera->copies[seq & 1];
+        std::atomic_thread_fence(std::memory_order_acquire);
+    } while (camera->sequence != seq);
+    return state;
+}
+
+#define RL_CAMERA_RING_CAPACITY 8
+
+/**
+ * One camera state (CameraRing.java), recorded as the GPU plugin sets up the scene.
+ *
+ * timestamp_ns is System.nanoTime(), which is CLOCK_MONOTONIC on Linux and QueryPerformanceCounter on Windows, the
+ * same clock as std::chrono::steady_clock (rl_camera_clock_ns). projection is the column-major world projection the
+ * plugin draws the scene with, from local scene coordinates to clip space, for a viewport_width x viewport_height
+ * viewport at (viewport_x, viewport_y) on the canvas. stretched_* is the canvas size on screen, equal to canvas_*
+ * when stretched mode is off.
+ */
+struct RLCameraFrame {
+    volatile int64_t sequence; // state number, 0 while being written
+    int64_t timestamp_ns;
+    int game_cycle;
+    int scale;
+    int viewport_x;
+    int viewport_y;
+    int viewport_width;
+    int viewport_height;
+    int canvas_width;
+    int canvas_height;
+    int stretched_width;
+    int stretched_height;
+    uint8_t reserved0[8];
+    float camera_x;
+    float camera_y;
+    float camera_z;
+    float yaw;   // radians
+    float pitch; // radians
+    uint8_t reserved1[44];
+    float projection[16];
+};
+
+/**
+ * Ring of the last RL_CAMERA_RING_CAPACITY camera states. head is the number of states written; state n
+ * (1-based) is in entries[(n - 1) % capacity]. To read state n:
+ *   if (entries[i].sequence != n) it was overwritten; copy it; acquire fence; if (entries[i].sequence != n) retry
+ * Two or more states give the camera's velocity for extrapolating to the renderer's own frame time.
+ */
+struct RLCameraRing {
+    int capacity; // RL_CAMERA_RING_CAPACITY
+    uint8_t pad0[4];
+    volatile int64_t head;
+    uint8_t pad1[48];
+    RLCameraFrame entries[RL_CAMERA_RING_CAPACITY];
+};
+
+static inline int64_t rl_camera_clock_ns() {
+    using namespace std::chrono;
+    return duration_cast<nanoseconds>(steady_clock::now().time_since_epoch()).count();
+}
+
+/**
+ * Copy state n of the ring into out.
+ *
+ * @return false if it is not in the ring, either not written yet or overwritten
+ */
+static inline bool rl_read_camera_frame(const RLCameraRing *ring, int64_t n, RLCameraFrame *out) {
+    if (n <= 0)
+        return false;
+    const RLCameraFrame *entry = &ring->entries[(n - 1) % RL_CAMERA_RING_CAPACITY];
+    while (true) {
+        if (entry->sequence != n)
+            return false;
+        std::atomic_thread_fence(std::memory_order_acquire);
+        std::memcpy(out, entry, sizeof(RLCameraFrame));
+        std::atomic_thread_fence(std::memory_order_acquire);
+        if (entry->sequence == n)
+            return true;
+    }
+}
+
+#define RL_FRAME_SLOTS 3
+#define RL_FRAME_SEGMENT_MAGIC 0x534D5246 // "FRMS"
+#define RL_FRAME_MAX_RECTS 16
+#define RL_FRAME_RECTS_FULL (-1)
+#define RL_FRAME_MAX_TILES 4096
+#define RL_FRAME_BITMAP_LONGS (RL_FRAME_MAX_TILES / 64)
+
+// Named by byte order in memory. RuneLite draws ARGB ints, which little-endian are BGRA.
+enum RLPixelFormat : int32_t {
+    RL_PIXEL_BGRA = 0,               // default, straight copy
+    RL_PIXEL_RGBA = 1,
+    RL_PIXEL_BGRA_PREMULTIPLIED = 2,
+    RL_PIXEL_RGBA_PREMULTIPLIED = 3,
+    RL_PIXEL_RGB565 = 4,             // uint16_t per pixel, alpha dropped, never span encoded
+    RL_PIXEL_I420 = 5,               // Y plane, then U and V planes of ((width + 1) / 2) * ((height + 1) / 2)
+    RL_PIXEL_NV12 = 6,               // Y plane, then one interleaved UV plane
+};
+
+enum RLYuvMatrix : int32_t {
+    RL_YUV_BT601 = 0,
+    RL_YUV_BT709 = 1,
+};
+
+enum RLYuvRange : int32_t {
+    RL_YUV_LIMITED = 0, // Y 16-235, UV 16-240
+    RL_YUV_FULL = 1,    // 0-255
+};
+
+enum RLFrameEncoding : int32_t {
+    RL_FRAME_ENCODING_RAW = 0,   // width * height ARGB pixels
+    RL_FRAME_ENCODING_SPANS = 1, // non-transparent spans per scanline, see rl_decode_spans
+};
+
+struct RLFrameSlot {
+    volatile int64_t sequence; // sequence of the frame held in this slot, 0 = never written
+    int width;
+    int height;
+    int32_t rect_count;    // rects changed since base_sequence, RL_FRAME_RECTS_FULL = whole frame
+    int32_t reserved;
+    int64_t base_sequence; // frame the rects are relative to, always sequence - 1
+    int32_t tile_size;     // pixels per tile side, 64 unless the grid would exceed RL_FRAME_MAX_TILES
+    int32_t tiles_x;
+    int32_t tiles_y;
+    int32_t encoding;       // RLFrameEncoding of the slot's pixels
+    int32_t encoded_length; // pixels (RAW) or uint32_t values (SPANS) used in the slot
+    int32_t format;         // RLPixelFormat of the slot's pixels
+    int16_t yuv_matrix;     // RLYuvMatrix the slot was converted with, for I420 and NV12
+    int16_t yuv_range;      // RLYuvRange
+    uint8_t pad[4];
+};
+
+struct RLFrameRect {
+    int x;
+    int y;
+    int width;
+    int height;
+};
+
+/**
+ * Triple-buffered frame ring, written by RuneLite (FrameRing.java).
+ *
+ * Only slot metadata lives in the region. The pixels live in a frame segment named "<region name>.frames.<generation>"
+ * (RLFrameSegment), sized from the canvas rather than for the largest possible frame. When the canvas outgrows it,
+ * RuneLite maps a larger segment, stores producer_index = -1 and slot_bytes, then bumps generation.
+ *
+ * RuneLite writes a slot that is neither producer_index nor consumer_index, stores the slot's sequence,
+ * then publishes it with a sequentially consistent store to producer_index. It never waits on the renderer.
+ *
+ * Renderer:
+ *   1. g = generation (acquire); if it differs from the mapped segment, map "<region name>.frames.<g>"
+ *   2. p = producer_index; if p < 0 or slots[p].sequence was already seen, there is no new frame
+ *   3. consumer_index = p   (sequentially consistent, e.g. InterlockedExchange)
+ *   4. if producer_index != p or generation != g, go back to 1 (RuneLite may not have seen the claim)
+ *   5. read pixels from the segment at 64 + p * slot_bytes; keep consumer_index = p while they are in use
+ *
+ * If the renderer's texture holds base_sequence and rect_count is not RL_FRAME_RECTS_FULL, only rects[p] changed
+ * and it can upload just those; otherwise (it skipped a frame, or the frame is full) it uploads the whole frame.
+ * dirty_tiles[p] marks the same changes per tile (bit ty * tiles_x + tx), for renderers that upload by tile;
+ * every bit is set for a full frame. Every slot holds the complete frame either way.
+ *
+ * RuneLite measures the renderer's lag as sequence - slots[consumer_index].sequence. Keeping consumer_index on the
+ * last slot read lets it drop or shrink frames while the renderer is behind, see Backpressure.java.
+ *
+ * A frame identical to the newest slot is not published and not signalled; only heartbeat and skipped move, so a
+ * renderer can tell an idle client from a stalled one.
+ *
+ * The renderer writes the RLPixelFormat it uploads in requested_format; RuneLite converts while copying and
+ * republishes a full frame in the new format. Check slots[p].format, a slot published before the switch keeps the
+ * old one. For I420 and NV12 it also writes yuv_matrix and yuv_range; the frame is converted with 2x2 averaged
+ * chroma, in parallel row stripes, and dirty tiles are converted in place like the other formats.
+ */
+struct RLFrameRing {
+    int slot_count;
+    volatile int32_t producer_index; // newest complete frame, -1 = none
+    volatile int32_t consumer_index; // slot claimed by the renderer, -1 = none
+    volatile int32_t generation;     // frame segment to map, 0 = none yet
+    volatile int64_t sequence;       // sequence of the newest complete frame
+    int64_t slot_bytes;              // stride between slots in the frame segment
+    volatile int64_t heartbeat;      // frames RuneLite drew, including skipped ones
+    volatile int64_t skipped;        // frames identical to the newest slot, not published
+    volatile int32_t requested_format; // RLPixelFormat, written by the renderer
+    volatile int32_t yuv_matrix;       // RLYuvMatrix, written by the renderer
+    volatile int32_t yuv_range;        // RLYuvRange, written by the renderer
+    uint8_t pad[4];
+    RLFrameSlot slots[RL_FRAME_SLOTS];
+    RLFrameRect rects[RL_FRAME_SLOTS][RL_FRAME_MAX_RECTS]; // changed rects of each slot's frame
+    uint64_t dirty_tiles[RL_FRAME_SLOTS][RL_FRAME_BITMAP_LONGS]; // changed tiles of each slot's frame
+};
+
+/**
+ * Header of a frame segment, followed by slot_count slots of slot_bytes each. The old segment is unlinked once a
+ * new generation is published, so a renderer should drop its mapping when it sees the new generation.
+ */
+struct RLFrameSegment {
+    volatile uint32_t magic; // RL_FRAME_SEGMENT_MAGIC once initialized
+    int32_t generation;
+    int64_t slot_bytes;
+    int32_t slot_count;
+    uint8_t pad[44];
+    // uint8_t pixels[slot_count][slot_bytes], 64-byte aligned
+};
+
+struct SResolution {
+    int width;
+    int height;
+    bool consumed = true;
+};
+
+#define S_INPUT_CAPACITY 256 // power of two
+
+enum SInputType : int32_t {
+    S_INPUT_MOUSE_MOVE = 1,
+    S_INPUT_MOUSE_PRESS = 2,
+    S_INPUT_MOUSE_RELEASE = 3,
+    S_INPUT_KEY_PRESS = 4,   // x = java.awt.event.KeyEvent VK code or 0, y = scan code, button = UTF-16 char or 0
+    S_INPUT_KEY_RELEASE = 5, // as S_INPUT_KEY_PRESS
+    S_INPUT_KEY_TYPED = 6,   // button = UTF-16 char the key produced
+    S_INPUT_MOUSE_WHEEL = 7, // button = rotation in 1/RL_WHEEL_DELTA notches, positive towards the user
+};
+
+#define RL_WHEEL_DELTA 120 // one notch, as WHEEL_DELTA on Windows
+
+// Scan codes are PS/2 set 1 as Windows reports them, with 0xE000 added for extended keys (right ctrl = 0xE01D).
+// With x = 0, RuneLite maps the scan code to a VK code and key location itself.
+
+enum RLInputModifier : int32_t {
+    RL_MOD_SHIFT = 1 << 0,
+    RL_MOD_CTRL = 1 << 1,
+    RL_MOD_ALT = 1 << 2,
+    RL_MOD_META = 1 << 3,
+    RL_MOD_ALT_GRAPH = 1 << 4,
+};
+
+struct SInputEvent {
+    int32_t type; // SInputType
+    int x;        // pointer position in canvas pixels; presses, releases and wheel happen at the last move
+    int y;
+    int button;   // 1 = left, 2 = middle, 3 = right; see SInputType for key and wheel events
+};
+
+/**
+ * Single-producer/single-consumer input ring, drained by RuneLite (InputRing.java).
+ *
+ * head and tail are free-running event counters on separate cache lines. The shim owns head, RuneLite owns
+ * tail. RuneLite drains events in order from its own thread, woken by RL_SIGNAL_INPUT or at most 1 ms later, so
+ * signal after pushing a batch. timestamps_us[i] is when events[i] was written, in microseconds since the Unix epoch,
+ * and becomes the AWT event time. modifiers[i] holds the RLInputModifier keys down at the time; mouse buttons held
+ * are tracked by RuneLite from presses and releases, and moves while one is held become drags.
+ *
+ * Consecutive moves drained together are coalesced into the last one, so there is no need to throttle them.
+ */
+struct SInputRing {
+    volatile int64_t head; // next event the shim will write
+    uint8_t pad0[56];
+    volatile int64_t tail; // next event RuneLite will read
+    uint8_t pad1[56];
+    SInputEvent events[S_INPUT_CAPACITY];
+    int64_t timestamps_us[S_INPUT_CAPACITY]; // 0 = unknown, RuneLite uses the time it read the event
+    int32_t modifiers[S_INPUT_CAPACITY];     // RLInputModifier bits
+};
+
+static inline int64_t rl_input_timestamp() {
+    using namespace std::chrono;
+    return duration_cast<microseconds>(system_clock::now().time_since_epoch()).count();
+}
+
+/**
+ * Producer side of SInputRing. Returns false (and drops the event) if RuneLite is a full ring behind.
+ */
+static inline bool rl_push_input(SInputRing *ring, const SInputEvent &event, int32_t modifiers = 0,
+                                 int64_t timestamp_us = rl_input_timestamp()) {
+    const int64_t head = ring->head;
+    const int64_t tail = ring->tail;
+    std::atomic_thread_fence(std::memory_order_acquire);
+    if (head - tail >= S_INPUT_CAPACITY)
+        return false;
+    ring->events[head & (S_INPUT_CAPACITY - 1)] = event;
+    ring->timestamps_us[head & (S_INPUT_CAPACITY - 1)] = timestamp_us;
+    ring->modifiers[head & (S_INPUT_CAPACITY - 1)] = modifiers;
+    std::atomic_thread_fence(std::memory_order_release);
+    ring->head = head + 1;
+    return true;
+}
+
+#define RL_SIGNAL_CHANNELS 2
+
+enum RLSignalChannel : uint32_t {
+    RL_SIGNAL_FRAME = 0, // signalled by RuneLite after every published frame
+    RL_SIGNAL_INPUT = 1, // signalled by the shim after pushing input events
+};
+
+/**
+ * Wakeup channel (Signal.java). The counter is bumped on every signal and is 32 bits so it can be used as a futex
+ * word. The signaller only makes a wake call if waiters is non-zero.
+ *
+ * Waiter: spin briefly on counter; then waiters += 1, re-read counter, and if unchanged sleep on the channel's
+ * auto-reset event (Windows: "<region name>.signal<channel>"), waiters -= 1 afterwards. Without an event, sleep
+ * with a bounded backoff instead of spinning.
+ */
+struct RLSignal {
+    volatile uint32_t counter;
+    volatile int32_t waiters;
+    uint8_t pad[56];
+};
+
+struct RLSignals {
+    RLSignal channels[RL_SIGNAL_CHANNELS];
+};
+
+#define RL_PREVIEW_LEVELS 2
+
+struct RLPreviewCopy {
+    int width;
+    int height;
+    int64_t frame_sequence; // RLFrameSlot sequence of the frame it was downscaled from
+};
+
+/**
+ * One downscaled level (PreviewSection.java), box-filtered ARGB pixels at 1/scale of the frame in each dimension.
+ *
+ * Two copies of capacity pixels each start at pixels_offset from the section, copy_bytes apart. Read like the camera:
+ *   do { s = acquire-load sequence; meta = copies[s & 1]; copy pixels of copy s & 1; acquire fence; }
+ *   while (sequence != s);
+ * sequence 0 means the level has not been written yet.
+ */
+struct RLPreviewLevel {
+    int scale;    // 4 or 8
+    int capacity; // pixels per copy
+    volatile int64_t sequence;
+    RLPreviewCopy copies[2];
+    int64_t pixels_offset;
+    int64_t copy_bytes;
+};
+
+/**
+ * Optional section, present when RuneLite enables previews. A consumer that only needs a thumbnail can read it
+ * without mapping the frame segment. Levels are refreshed every update_interval published frames.
+ */
+struct RLPreviewSection {
+    int level_count; // RL_PREVIEW_LEVELS
+    int update_interval;
+    uint8_t reserved[56];
+    RLPreviewLevel levels[RL_PREVIEW_LEVELS];
+};
+
+static inline const uint32_t *rl_preview_pixels(const RLPreviewSection *preview, int level, int copy) {
+    const RLPreviewLevel *l = &preview->levels[level];
+    return reinterpret_cast<const uint32_t *>(
+            reinterpret_cast<const uint8_t *>(preview) + l->pixels_offset + copy * l->copy_bytes);
+}
+
+/**
+ * Copy the newest image of a level into out, which holds out_capacity pixels, at least capacity to read any image.
+ *
+ * @return false if the level has not been written yet, or its size is out of range for capacity or out_capacity
+ */
+static inline bool rl_read_preview(const RLPreviewSection *preview, int level, RLPreviewCopy *meta, uint32_t *out,
+                                   int out_capacity) {
+    const RLPreviewLevel *l = &preview->levels[level];
+    const int64_t limit = l->capacity < out_capacity ? l->capacity : out_capacity;
+    int64_t seq;
+    do {
+        seq = l->sequence;
+        std::atomic_thread_fence(std::memory_order_acquire);
+        if (seq == 0)
+            return false;
+        *meta = l->copies[seq & 1];
+        // a writer lapping the reader can tear the size, so only trust it once the sequence is confirmed
+        const int64_t pixels = static_cast<int64_t>(meta->width) * meta->height;
+        if (meta->width < 0 || meta->height < 0 || pixels > limit) {
+            std::atomic_thread_fence(std::memory_order_acquire);
+            if (l->sequence == seq)
+                return false;
+            continue;
+        }
+        std::memcpy(out, rl_preview_pixels(preview, level, static_cast<int>(seq & 1)),
+                    static_cast<size_t>(pixels) * sizeof(uint32_t));
+        std::atomic_thread_fence(std::memory_order_acquire);
+    } while (l->sequence != seq);
+    return true;
+}
+
+#define RL_GEOMETRY_SEGMENT_MAGIC 0x534F4547 // "GEOS"
+
+enum RLGeometryRecordType : int32_t {
+    RL_GEOMETRY_ZONE = 1,   // a zone's vertex data
+    RL_GEOMETRY_COMMIT = 2, // generation is now current for world_view
+};
+
+/**
+ * Static scene geometry, written by RuneLite (ZoneGeometry.java) as it loads and rebuilds zones.
+ *
+ * Records live in a geometry segment named "<region name>.geometry.<generation>" (RLGeometrySegment), appended from
+ * offset 64 up to end, which RuneLite advances with a release store after each record. When a record doesn't fit,
+ * RuneLite copies the live records into a new, larger segment, stores generation = 0, then end, and then the new
+ * generation, and unlinks the old segment.
+ *
+ * Renderer:
+ *   1. g = generation (acquire); if 0, try later; if it differs from the mapped segment, map
+ *      "<region name>.geometry.<g>", drop every zone and read from offset 64
+ *   2. e = end (acquire); if generation != g, go back to 1
+ *   3. apply the records from the read offset up to e, each length bytes long
+ *
+ * Zones are keyed by (world_view, zone_x, zone_z, generation), world view -1 being the top level scene. A zone
+ * record replaces an earlier one with the same key. A commit record makes its generation the world view's current
+ * one: drop the world view's zones of older generations, and ignore later zone records older than it. Zones of a
+ * newer generation are a load in progress, drawn once it is committed. A commit without zones (a despawned world
+ * view) leaves nothing to draw.
+ */
+struct RLGeometrySection {
+    volatile int32_t generation; // geometry segment to map, 0 = none or switching
+    uint8_t pad0[4];
+    volatile int64_t end;        // end of the complete records in the segment
+    int64_t records;             // records in the segment
+    int64_t segment_size;
+    uint8_t pad1[32];
+};
+
+struct RLGeometrySegment {
+    volatile uint32_t magic; // RL_GEOMETRY_SEGMENT_MAGIC once initialized
+    int32_t generation;
+    int64_t size;
+    uint8_t pad[48];
+    // RLGeometryRecord records[], 8-byte aligned
+};
+
+/**
+ * One record, followed by opaque_ints then alpha_ints of vertex data as the GPU plugin uploads it, vertex_size
+ * bytes per vertex and three vertices per face.
+ */
+struct RLGeometryRecord {
+    int32_t length; // bytes including this header and padding, a multiple of 8
+    int32_t type;   // RLGeometryRecordType
+    int32_t world_view;
+    int32_t zone_x;
+    int32_t zone_z;
+    int32_t generation;
+    int32_t vertex_size;
+    int32_t opaque_ints;
+    int32_t alpha_ints;
+    uint8_t pad[4];
+};
+
+static inline const uint32_t *rl_geometry_opaque(const RLGeometryRecord *record) {
+    return reinterpret_cast<const uint32_t *>(record + 1);
+}
+
+static inline const uint32_t *rl_geometry_alpha(const RLGeometryRecord *record) {
+    return rl_geometry_opaque(record) + record->opaque_ints;
+}
+
+#define RL_REGISTRY_NAME "URRL.registry"
+#define RL_REGISTRY_MAGIC 0x47455252 // "RREG"
+#define RL_REGISTRY_CAPACITY 64
+#define RL_REGISTRY_STALE_MILLIS 5000
+
+struct RLRegistryEntry {
+    volatile int64_t pid;       // owning process, 0 while the entry is being claimed or released
+    volatile int64_t heartbeat; // System.currentTimeMillis(), refreshed every second while held, 0 = free
+    uint64_t size;              // bytes in the client's region
+    char name[104];             // NUL-terminated region name to map
+};
+
+/**
+ * Host-wide registry of client regions (SharedMemoryRegistry.java), its own region named RL_REGISTRY_NAME.
+ * An entry is live while its heartbeat is within RL_REGISTRY_STALE_MILLIS of the current time; a renderer can
+ * serve every live entry by mapping its name. An entry is claimed before its region is created, so retry a name
+ * that doesn't map yet.
+ */
+struct RLRegistry {
+    volatile uint32_t magic; // RL_REGISTRY_MAGIC
+    uint32_t version;
+    uint32_t capacity;       // RL_REGISTRY_CAPACITY
+    uint8_t reserved[52];
+    RLRegistryEntry entries[RL_REGISTRY_CAPACITY];
+};
+
+#pragma pack(pop)
+
+/**
+ * Expand a RL_FRAME_ENCODING_SPANS slot into width * height ARGB pixels, transparent where no span covers.
+ *
+ * The slot starts with uint32_t row_start[height], offsets in uint32_t from the start of the slot. Each row holds
+ * span_count followed by span_count spans of (x, length, pixels[length]).
+ */
+static inline void rl_decode_spans(const uint32_t *slot, int width, int height, uint32_t *out) {
+    std::memset(out, 0, static_cast<size_t>(width) * height * sizeof(uint32_t));
+    for (int y = 0; y < height; y++) {
+        const uint32_t *p = slot + slot[y];
+        uint32_t spans = *p++;
+        for (uint32_t i = 0; i < spans; i++) {
+            const uint32_t x = *p++;
+            const uint32_t length = *p++;
+            std::memcpy(out + static_cast<size_t>(y) * width + x, p, length * sizeof(uint32_t));
+            p += length;
+        }
+    }
+}
+
+static_assert(sizeof(RLRegionHeader) == 64 + 24 * RL_MAX_SECTIONS, "RLRegionHeader size");
+static_assert(sizeof(RLCameraStatus) == 56, "RLCameraStatus size");
+static_assert(sizeof(RLCameraFrame) == 192, "RLCameraFrame size");
+static_assert(offsetof(RLCameraFrame, camera_x) == 64, "RLCameraFrame camera offset");
+static_assert(offsetof(RLCameraFrame, projection) == 128, "RLCameraFrame projection offset");
+static_assert(offsetof(RLCameraRing, entries) == 64, "RLCameraRing header size");
+static_assert(offsetof(RLFrameRing, slots) == 64, "frame slots must be cache-line aligned");
+static_assert(sizeof(RLFrameSlot) == 64, "frame slots must be cache-line aligned");
+static_assert(sizeof(RLFrameRect) == 16, "RLFrameRect size");
+static_assert(sizeof(RLFrameSegment) == 64, "frame segment pixels must be cache-line aligned");
+static_assert(sizeof(SInputRing) == 128 + 28 * S_INPUT_CAPACITY, "SInputRing size");
+static_assert(sizeof(SResolution) == 9, "SResolution size");
+static_assert(sizeof(RLSignal) == 64, "signal channels must be one cache line each");
+static_assert(sizeof(RLPreviewLevel) == 64, "RLPreviewLevel size");
+static_assert(offsetof(RLPreviewSection, levels) == 64, "RLPreviewSection header size");
+static_assert(sizeof(RLGeometrySection) == 64, "RLGeometrySection size");
+static_assert(sizeof(RLGeometrySegment) == 64, "RLGeometrySegment size");
+static_assert(sizeof(RLGeometryRecord) == 40, "RLGeometryRecord size");
+static_assert(sizeof(RLRegistryEntry) == 128, "RLRegistryEntry size");
+static_assert(offsetof(RLRegistry, entries) == 64, "RLRegistry header size");
+
+/**
+ * Find a section in an initialized region, or nullptr if the region is not ready, has an incompatible major
+ * version, or does not contain the section.
+ */
+static inline void *rl_find_section(void *base, uint32_t id, uint64_t *length) {
+    const RLRegionHeader *header = reinterpret_cast<const RLRegionHeader *>(base);
+    if (header->magic != RL_MAGIC)
+        return nullptr;
+    std::atomic_thread_fence(std::memory_order_acquire);
+    if (header->version_major != RL_VERSION_MAJOR)
+        return nullptr;
+    for (uint32_t i = 0; i < header->section_count && i < RL_MAX_SECTIONS; i++) {
+        const RLSectionEntry &entry = header->sections[i];
+        if (entry.id == id) {
+            if (length)
+                *length = entry.length;
+            return reinterpret_cast<uint8_t *>(base) + entry.offset;
+        }
+    }
+    return nullptr;
+}
+} // extern "C"
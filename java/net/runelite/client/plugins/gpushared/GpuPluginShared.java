@@ -30,13 +30,13 @@ import com.google.common.primitives.Ints;
 import com.google.inject.Provides;
 
 import java.awt.*;
-import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -75,6 +75,9 @@ import net.runelite.client.plugins.PluginManager;
 import net.runelite.client.plugins.gpu.config.AntiAliasingMode;
 import net.runelite.client.plugins.gpu.config.UIScalingMode;
 import net.runelite.client.plugins.gpu.template.Template;
+import net.runelite.client.plugins.gpushared.InputDispatcher;
+import net.runelite.client.plugins.gpushared.shim.Backpressure;
+import net.runelite.client.plugins.gpushared.shim.CameraRing;
 import net.runelite.client.plugins.gpushared.shim.SharedMemoryBridge;
 import net.runelite.client.ui.ClientUI;
 import net.runelite.client.ui.DrawManager;
@@ -198,6 +201,8 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
     {
         final int sizeX, sizeZ;
         Zone[][] zones;
+        // load generation the zones are published to shared memory under
+        int geometryGeneration;
 
         SceneContext(int sizeX, int sizeZ)
         {
@@ -248,6 +253,8 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
     private SceneContext root;
     private SceneContext[] subs;
     private Zone[][] nextZones;
+    private int nextZoneGeneration;
+    private int nextZoneDx, nextZoneDz;
     private Map<Integer, Integer> nextRoofChanges;
 
     // Uniforms
@@ -276,8 +283,15 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
     @Override
     protected void startUp()
     {
-        System.loadLibrary("rl_gpushared_shim");
-        bridge.init("URRL");
+        // keep the shared memory copy off the client thread
+        bridge.setAsyncPublishing(true);
+        bridge.setParallelCopy(true);
+        // don't spend the copy on frames a stalled renderer will never read
+        bridge.setBackpressurePolicy(Backpressure.DROP);
+        bridge.init(SharedMemoryBridge.DEFAULT_NAME);
+        // deliver input as it arrives instead of once per frame
+        bridge.startInputPoller(inputHandler, EventQueue::invokeLater);
+        log.info("Publishing to shared memory region {}", bridge.getName());
         root = new SceneContext(NUM_ZONES, NUM_ZONES);
         subs = new SceneContext[MAX_WORLDVIEWS];
         clientUploader = new SceneUploader(renderCallbackManager);
@@ -465,6 +479,8 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
 
             glCapabilities = null;
 
+            bridge.shutdown();
+
             // force main buffer provider rebuild to turn off alpha channel
             client.resizeCanvas();
         });
@@ -967,6 +983,8 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
         Mat4.mul(projectionMatrix, Mat4.rotateY(cameraYaw));
         Mat4.mul(projectionMatrix, Mat4.translate(-cameraX, -cameraY, -cameraZ));
         glUniformMatrix4fv(uniWorldProj, false, projectionMatrix);
+        publishCameraState(projectionMatrix, cameraX, cameraY, cameraZ, cameraPitch, cameraYaw,
+                canvasWidth, canvasHeight, viewportWidth, viewportHeight);
 
         projectionMatrix = Mat4.identity();
         glUniformMatrix4fv(uniEntityProj, false, projectionMatrix);
@@ -1349,14 +1367,96 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
                 zone.unmap();
                 zone.initialized = true;
                 zone.dirty = true;
+                publishZoneGeometry(wv.getId(), x, z, ctx.geometryGeneration, zone);
 
                 log.debug("Rebuilt zone wv={} x={} z={}", wv.getId(), x, z);
             }
         }
     }
 
+    /**
+     * Publish an uploaded zone to the external renderer, if it streams geometry. The zone's buffers are read back
+     * once they are unmapped, since they are mapped write-only while uploading.
+     */
+    private void publishZoneGeometry(int worldViewId, int x, int z, int generation, Zone zone)
+    {
+        if (generation == 0)
+        {
+            return;
+        }
+
+        // the buffers are sized exactly as allocated in rebuild and loadScene
+        final int vaoO = zone.glVao, vaoA = zone.glVaoA;
+        final int intsO = vaoO != 0 ? zone.sizeO * Zone.VERT_SIZE * 3 / Integer.BYTES : 0;
+        final int intsA = vaoA != 0 ? zone.sizeA * Zone.VERT_SIZE * 3 / Integer.BYTES : 0;
+        bridge.publishZone(worldViewId, x, z, generation, Zone.VERT_SIZE, intsO, intsA,
+                (opaque, alpha) ->
+                {
+                    readBuffer(vaoO, opaque);
+                    readBuffer(vaoA, alpha);
+                });
+    }
+
+    /**
+     * Read the vertex buffer behind a zone's vao, restoring the previous bindings.
+     */
+    private static void readBuffer(int vao, IntBuffer dst)
+    {
+        if (vao == 0 || !dst.hasRemaining())
+        {
+            return;
+        }
+
+        final int prevVao = glGetInteger(GL_VERTEX_ARRAY_BINDING);
+        final int prevBuffer = glGetInteger(GL_ARRAY_BUFFER_BINDING);
+        glBindVertexArray(vao);
+        final int buffer = glGetVertexAttribi(0, GL_VERTEX_ATTRIB_ARRAY_BUFFER_BINDING);
+        glBindVertexArray(prevVao);
+
+        glBindBuffer(GL_ARRAY_BUFFER, buffer);
+        glGetBufferSubData(GL_ARRAY_BUFFER, 0, dst);
+        glBindBuffer(GL_ARRAY_BUFFER, prevBuffer);
+    }
+
     int lastWidth, lastHeight;
-    int lastX, lastY;
+
+    private final CameraRing.State cameraState = new CameraRing.State();
+
+    private void publishCameraState(float[] projectionMatrix, float cameraX, float cameraY, float cameraZ,
+                                    float cameraPitch, float cameraYaw,
+                                    int canvasWidth, int canvasHeight, int viewportWidth, int viewportHeight)
+    {
+        final CameraRing.State state = cameraState;
+        state.timestampNanos = System.nanoTime();
+        state.gameCycle = client.getGameCycle();
+        state.scale = client.getScale();
+        state.viewportX = client.getViewportXOffset();
+        state.viewportY = client.getViewportYOffset();
+        state.viewportWidth = viewportWidth;
+        state.viewportHeight = viewportHeight;
+        state.canvasWidth = canvasWidth;
+        state.canvasHeight = canvasHeight;
+        if (client.isStretchedEnabled())
+        {
+            final Dimension dim = client.getStretchedDimensions();
+            state.stretchedWidth = dim.width;
+            state.stretchedHeight = dim.height;
+        }
+        else
+        {
+            state.stretchedWidth = canvasWidth;
+            state.stretchedHeight = canvasHeight;
+        }
+        state.cameraX = cameraX;
+        state.cameraY = cameraY;
+        state.cameraZ = cameraZ;
+        state.yaw = cameraYaw;
+        state.pitch = cameraPitch;
+        System.arraycopy(projectionMatrix, 0, state.projection, 0, 16);
+        bridge.setCameraState(state);
+    }
+
+    private final InputDispatcher inputHandler = new InputDispatcher(() -> client.getCanvas());
 
     private void prepareInterfaceTexture(int canvasWidth, int canvasHeight)
     {
@@ -1379,94 +1479,9 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
         final int width = bufferProvider.getWidth();
         final int height = bufferProvider.getHeight();
 
-        bridge.getResolution();
-        bridge.getMouseMove();
-        bridge.getMousePress();
-        bridge.getMouseRelease();
-
-        lastWidth = SharedMemoryBridge.resolution.width;
-        lastHeight = SharedMemoryBridge.resolution.height;
-
-
-        boolean update = false;
-
-        Component eventComponent = client.getCanvas();
-
-        if (!SharedMemoryBridge.mouseMove.consumed) {
-            if (lastX != SharedMemoryBridge.mouseMove.x || lastY != SharedMemoryBridge.mouseMove.y) {
-                update = true;
-            }
-            if (SharedMemoryBridge.mouseMove.x < 0 || SharedMemoryBridge.mouseMove.x > 5000)
-                update = false;
-            if (SharedMemoryBridge.mouseMove.y < 0 || SharedMemoryBridge.mouseMove.y > 5000)
-                update = false;
-
-            int dx = Math.abs(SharedMemoryBridge.mouseMove.x - lastX);
-            int dy = Math.abs(SharedMemoryBridge.mouseMove.y - lastY);
-
-            update = dx > 1 || dy > 1;
-
-            if (update) {
-                // Example: get mouse x/y from wherever your shared memory stores it
-                lastX = SharedMemoryBridge.mouseMove.x;
-                lastY = SharedMemoryBridge.mouseMove.y;
-
-                // Create a new MouseEvent for the client panel
-                MouseEvent event = new MouseEvent(
-                        eventComponent,        // Source component
-                        MouseEvent.MOUSE_MOVED,      // Event type
-                        System.currentTimeMillis(),  // When it happened
-                        0,                           // Modifiers (none here, can add SHIFT, CTRL, etc)
-                        lastX,                      // X coordinate
-                        lastY,                      // Y coordinate
-                        0,                           // Click count
-                        false                        // Is popup trigger
-                );
-
-                // Dispatch it to the component
-                eventComponent.dispatchEvent(event);
-            }
-
-            bridge.setMouseMove(-1, -1, true);
-        }
-
-        if (!SharedMemoryBridge.mousePress.consumed) {
-            MouseEvent event = new MouseEvent(
-                    eventComponent,
-                    MouseEvent.MOUSE_PRESSED,
-                    System.currentTimeMillis(),
-                    0,
-                    lastX,
-                    lastY,
-                    1,
-                    false,
-                    SharedMemoryBridge.mousePress.button
-            );
-
-            // Dispatch it to the component
-            eventComponent.dispatchEvent(event);
-            System.out.println("Mouse clicked");
-            bridge.setMousePress(-1, true);
-        }
-
-        if (!SharedMemoryBridge.mouseRelease.consumed) {
-            MouseEvent event = new MouseEvent(
-                    eventComponent,
-                    MouseEvent.MOUSE_RELEASED,
-                    System.currentTimeMillis(),
-                    0,
-                    lastX,
-                    lastY,
-                    1,
-                    false,
-                    SharedMemoryBridge.mouseRelease.button
-            );
-
-            // Dispatch it to the component
-            eventComponent.dispatchEvent(event);
-
-            bridge.setMouseRelease(-1, true);
-        }
+        final SharedMemoryBridge.Resolution resolution = bridge.getResolution();
+        lastWidth = resolution.width;
+        lastHeight = resolution.height;
 
         // yaw: 0 = north, increasing clockwise
 // pitch: 0 = horizontal, positive = looking down
@@ -1481,7 +1496,7 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
 
 
         if (pixels != null && width > 0 && height > 0) {
-            bridge.setFrameBuffer(width, height, true, false, pixels);
+            bridge.setFrameBuffer(width, height, pixels);
         }
 
         glBindBuffer(GL_PIXEL_UNPACK_BUFFER, interfacePbo);
@@ -1716,6 +1731,7 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
 
         SceneContext ctx = root;
         Scene prev = client.getTopLevelWorldView().getScene();
+        final int zoneGeneration = bridge.beginZones();
 
         regionManager.prepare(scene);
 
@@ -1949,6 +1965,9 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
         }
 
         nextZones = newZones;
+        nextZoneGeneration = zoneGeneration;
+        nextZoneDx = dx;
+        nextZoneDz = dy;
         nextRoofChanges = roofChanges;
     }
 
@@ -1997,6 +2016,7 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
         }
 
         final SceneContext ctx = new SceneContext(worldView.getSizeX() >> 3, worldView.getSizeY() >> 3);
+        ctx.geometryGeneration = bridge.beginZones();
         subs[worldViewId] = ctx;
 
         for (int x = 0; x < ctx.sizeX; ++x)
@@ -2076,6 +2096,7 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
 
             sub.free();
             subs[worldViewId] = null;
+            bridge.removeZones(worldViewId);
         }
     }
 
@@ -2110,6 +2131,9 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
 
         ctx.zones = nextZones;
         nextZones = null;
+        final int prevZoneGeneration = ctx.geometryGeneration;
+        ctx.geometryGeneration = nextZoneGeneration;
+        nextZoneGeneration = 0;
 
         // setup vaos
         for (int x = 0; x < ctx.zones.length; ++x) // NOPMD: ForLoopCanBeForeach
@@ -2122,9 +2146,16 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
                 {
                     zone.unmap();
                     zone.initialized = true;
+                    publishZoneGeometry(-1, x, z, ctx.geometryGeneration, zone);
+                }
+                else
+                {
+                    // reused zone, copied here rather than in loadScene so it picks up rebuilds made during the load
+                    bridge.copyZone(-1, x + nextZoneDx, z + nextZoneDz, prevZoneGeneration, x, z, ctx.geometryGeneration);
                 }
             }
         }
+        bridge.commitZones(-1, ctx.geometryGeneration);
 
         checkGLErrors();
     }
@@ -2148,9 +2179,11 @@ public class GpuPluginShared extends Plugin implements DrawCallbacks
                 {
                     zone.unmap();
                     zone.initialized = true;
+                    publishZoneGeometry(scene.getWorldViewId(), x, z, ctx.geometryGeneration, zone);
                 }
             }
         }
+        bridge.commitZones(scene.getWorldViewId(), ctx.geometryGeneration);
         log.debug("WorldView ready: {}", scene.getWorldViewId());
     }
 
@@ -0,0 +1,274 @@
+package net.runelite.client.plugins.gpushared;
+
+import java.awt.Component;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.function.Supplier;
+import net.runelite.client.plugins.gpushared.shim.InputRing;
+
+/**
+ * Turns shim input events into AWT events on the client canvas, on the thread that drains them (the AWT event thread
+ * when they come from an {@link net.runelite.client.plugins.gpushared.shim.InputPoller}).
+ *
+ * For the mouse the shim only sends moves, presses and releases. The rest of what AWT would produce is derived here:
+ * buttons held are tracked so moves while one is down become drags and appear in the modifiers, and a release where
+ * the button was pressed is followed by a click, with the click count AWT would give it.
+ *
+ * Key events become {@link KeyEvent}s; a key without a VK code is looked up by its set 1 scan code, which also gives
+ * the location of modifier and keypad keys. Wheel rotation arrives in 1/120 notches and is accumulated so precise
+ * touchpads still produce whole {@link MouseWheelEvent#getWheelRotation} steps.
+ */
+public class InputDispatcher implements InputRing.Handler
+{
+    // AWT's default awt.multiClickInterval
+    private static final long MULTI_CLICK_MILLIS = 500;
+    // pixels the pointer may move between presses and still count as a multi-click
+    private static final int CLICK_SLOP = 2;
+    // lines per notch, AWT's default on most platforms
+    private static final int SCROLL_AMOUNT = 3;
+
+    // set 1 scan code to VK code and location, indexed by code & 0x7F, plus 0x80 for extended (0xE0xx) codes
+    private static final int[] SCAN_KEY_CODES = new int[256];
+    private static final int[] SCAN_LOCATIONS = new int[256];
+
+    static
+    {
+        final int[] row = {
+                0x01, KeyEvent.VK_ESCAPE, 0x0C, KeyEvent.VK_MINUS, 0x0D, KeyEvent.VK_EQUALS,
+                0x0E, KeyEvent.VK_BACK_SPACE, 0x0F, KeyEvent.VK_TAB, 0x1A, KeyEvent.VK_OPEN_BRACKET,
+                0x1B, KeyEvent.VK_CLOSE_BRACKET, 0x1C, KeyEvent.VK_ENTER, 0x27, KeyEvent.VK_SEMICOLON,
+                0x28, KeyEvent.VK_QUOTE, 0x29, KeyEvent.VK_BACK_QUOTE, 0x2B, KeyEvent.VK_BACK_SLASH,
+                0x33, KeyEvent.VK_COMMA, 0x34, KeyEvent.VK_PERIOD, 0x35, KeyEvent.VK_SLASH,
+                0x39, KeyEvent.VK_SPACE, 0x3A, KeyEvent.VK_CAPS_LOCK, 0x57, KeyEvent.VK_F11, 0x58, KeyEvent.VK_F12,
+        };
+        for (int i = 0; i < row.length; i += 2)
+            mapScanCode(row[i], row[i + 1], KeyEvent.KEY_LOCATION_STANDARD);
+
+        mapScanCode(0x02, KeyEvent.VK_1, KeyEvent.KEY_LOCATION_STANDARD);
+        for (int i = 0; i < 8; i++)
+            mapScanCode(0x03 + i, KeyEvent.VK_2 + i, KeyEvent.KEY_LOCATION_STANDARD);
+        mapScanCode(0x0B, KeyEvent.VK_0, KeyEvent.KEY_LOCATION_STANDARD);
+        mapLetters(0x10, "QWERTYUIOP");
+        mapLetters(0x1E, "ASDFGHJKL");
+        mapLetters(0x2C, "ZXCVBNM");
+        for (int i = 0; i < 10; i++)
+            mapScanCode(0x3B + i, KeyEvent.VK_F1 + i, KeyEvent.KEY_LOCATION_STANDARD);
+
+        mapScanCode(0x2A, KeyEvent.VK_SHIFT, KeyEvent.KEY_LOCATION_LEFT);
+        mapScanCode(0x36, KeyEvent.VK_SHIFT, KeyEvent.KEY_LOCATION_RIGHT);
+        mapScanCode(0x1D, KeyEvent.VK_CONTROL, KeyEvent.KEY_LOCATION_LEFT);
+        mapScanCode(0xE01D, KeyEvent.VK_CONTROL, KeyEvent.KEY_LOCATION_RIGHT);
+        mapScanCode(0x38, KeyEvent.VK_ALT, KeyEvent.KEY_LOCATION_LEFT);
+        mapScanCode(0xE038, KeyEvent.VK_ALT, KeyEvent.KEY_LOCATION_RIGHT);
+        mapScanCode(0xE05B, KeyEvent.VK_WINDOWS, KeyEvent.KEY_LOCATION_LEFT);
+        mapScanCode(0xE05C, KeyEvent.VK_WINDOWS, KeyEvent.KEY_LOCATION_RIGHT);
+
+        final int[] extended = {
+                0xE047, KeyEvent.VK_HOME, 0xE048, KeyEvent.VK_UP, 0xE049, KeyEvent.VK_PAGE_UP,
+                0xE04B, KeyEvent.VK_LEFT, 0xE04D, KeyEvent.VK_RIGHT, 0xE04F, KeyEvent.VK_END,
+                0xE050, KeyEvent.VK_DOWN, 0xE051, KeyEvent.VK_PAGE_DOWN, 0xE052, KeyEvent.VK_INSERT,
+                0xE053, KeyEvent.VK_DELETE,
+        };
+        for (int i = 0; i < extended.length; i += 2)
+            mapScanCode(extended[i], extended[i + 1], KeyEvent.KEY_LOCATION_STANDARD);
+
+        final int[] numpad = {
+                0x47, KeyEvent.VK_NUMPAD7, 0x48, KeyEvent.VK_NUMPAD8, 0x49, KeyEvent.VK_NUMPAD9,
+                0x4B, KeyEvent.VK_NUMPAD4, 0x4C, KeyEvent.VK_NUMPAD5, 0x4D, KeyEvent.VK_NUMPAD6,
+                0x4F, KeyEvent.VK_NUMPAD1, 0x50, KeyEvent.VK_NUMPAD2, 0x51, KeyEvent.VK_NUMPAD3,
+                0x52, KeyEvent.VK_NUMPAD0, 0x53, KeyEvent.VK_DECIMAL, 0x37, KeyEvent.VK_MULTIPLY,
+                0x4A, KeyEvent.VK_SUBTRACT, 0x4E, KeyEvent.VK_ADD, 0xE035, KeyEvent.VK_DIVIDE,
+                0xE01C, KeyEvent.VK_ENTER, 0x45, KeyEvent.VK_NUM_LOCK,
+        };
+        for (int i = 0; i < numpad.length; i += 2)
+            mapScanCode(numpad[i], numpad[i + 1], KeyEvent.KEY_LOCATION_NUMPAD);
+    }
+
+    private static int scanIndex(int scanCode)
+    {
+        return (scanCode & 0x7F) | ((scanCode & 0xFF00) == 0xE000 ? 0x80 : 0);
+    }
+
+    private static void mapScanCode(int scanCode, int keyCode, int location)
+    {
+        SCAN_KEY_CODES[scanIndex(scanCode)] = keyCode;
+        SCAN_LOCATIONS[scanIndex(scanCode)] = location;
+    }
+
+    private static void mapLetters(int scanCode, String letters)
+    {
+        for (int i = 0; i < letters.length(); i++)
+            mapScanCode(scanCode + i, KeyEvent.VK_A + letters.charAt(i) - 'A', KeyEvent.KEY_LOCATION_STANDARD);
+    }
+
+    // no move has been seen yet, so a first move to (0, 0) is not mistaken for no movement
+    private static final int NO_POSITION = Integer.MIN_VALUE;
+
+    private final Supplier<Component> component;
+
+    private int x = NO_POSITION;
+    private int y = NO_POSITION;
+    private int buttonsDown; // InputEvent button masks
+    private int pressX;
+    private int pressY;
+    private boolean moved; // since the last press
+    private int clickButton;
+    private long clickTime;
+    private int clickCount;
+    private int wheelRemainder; // 1/120 notches not yet reported as whole rotation
+
+    public InputDispatcher(Supplier<Component> component)
+    {
+        this.component = component;
+    }
+
+    @Override
+    public void onInputEvent(int type, int x, int y, int button, int modifiers, long when)
+    {
+        final Component target = component.get();
+        if (target == null)
+            return;
+
+        switch (type)
+        {
+            case InputRing.MOUSE_MOVE:
+            {
+                if (x == this.x && y == this.y)
+                    return;
+                this.x = x;
+                this.y = y;
+                if (Math.abs(x - pressX) > CLICK_SLOP || Math.abs(y - pressY) > CLICK_SLOP)
+                    moved = true;
+                final int id = buttonsDown != 0 ? MouseEvent.MOUSE_DRAGGED : MouseEvent.MOUSE_MOVED;
+                target.dispatchEvent(new MouseEvent(target, id, when, modifiersEx(modifiers), x, y, 0, false));
+                break;
+            }
+            case InputRing.MOUSE_PRESS:
+            {
+                if (button < MouseEvent.BUTTON1 || button > MouseEvent.BUTTON3)
+                    return;
+                ensurePosition();
+                if (button == clickButton && when - clickTime <= MULTI_CLICK_MILLIS
+                        && Math.abs(this.x - pressX) <= CLICK_SLOP && Math.abs(this.y - pressY) <= CLICK_SLOP)
+                    clickCount++;
+                else
+                    clickCount = 1;
+                clickButton = button;
+                clickTime = when;
+                pressX = this.x;
+                pressY = this.y;
+                moved = false;
+                buttonsDown |= InputEvent.getMaskForButton(button);
+                target.dispatchEvent(new MouseEvent(target, MouseEvent.MOUSE_PRESSED, when, modifiersEx(modifiers),
+                        this.x, this.y, clickCount, false, button));
+                break;
+            }
+            case InputRing.MOUSE_RELEASE:
+            {
+                if (button < MouseEvent.BUTTON1 || button > MouseEvent.BUTTON3)
+                    return;
+                final int mask = InputEvent.getMaskForButton(button);
+                if ((buttonsDown & mask) == 0)
+                    return;
+                buttonsDown &= ~mask;
+                final int count = button == clickButton ? clickCount : 1;
+                target.dispatchEvent(new MouseEvent(target, MouseEvent.MOUSE_RELEASED, when, modifiersEx(modifiers),
+                        this.x, this.y, count, false, button));
+                if (!moved && button == clickButton)
+                {
+                    target.dispatchEvent(new MouseEvent(target, MouseEvent.MOUSE_CLICKED, when, modifiersEx(modifiers),
+                            this.x, this.y, count, false, button));
+                }
+                break;
+            }
+            case InputRing.KEY_PRESS:
+            case InputRing.KEY_RELEASE:
+            {
+                final int index = scanIndex(y);
+                final int keyCode = x != 0 ? x : SCAN_KEY_CODES[index];
+                final int location = SCAN_LOCATIONS[index] != 0 && (x == 0 || x == SCAN_KEY_CODES[index])
+                        ? SCAN_LOCATIONS[index] : KeyEvent.KEY_LOCATION_STANDARD;
+                final char keyChar = button != 0 ? (char) button : KeyEvent.CHAR_UNDEFINED;
+                final int id = type == InputRing.KEY_PRESS ? KeyEvent.KEY_PRESSED : KeyEvent.KEY_RELEASED;
+                dispatchKey(target, new KeyEvent(target, id, when, modifiersEx(modifiers), keyCode, keyChar, location));
+                break;
+            }
+            case InputRing.KEY_TYPED:
+            {
+                if (button == 0)
+                    return;
+                dispatchKey(target, new KeyEvent(target, KeyEvent.KEY_TYPED, when, modifiersEx(modifiers),
+                        KeyEvent.VK_UNDEFINED, (char) button, KeyEvent.KEY_LOCATION_UNKNOWN));
+                break;
+            }
+            case InputRing.MOUSE_WHEEL:
+            {
+                if (button == 0)
+                    return;
+                ensurePosition();
+                final int total = wheelRemainder + button;
+                final int rotation = total / InputRing.WHEEL_DELTA;
+                wheelRemainder = total - rotation * InputRing.WHEEL_DELTA;
+                target.dispatchEvent(new MouseWheelEvent(target, MouseEvent.MOUSE_WHEEL, when, modifiersEx(modifiers),
+                        this.x, this.y, this.x, this.y, 0, false, MouseWheelEvent.WHEEL_UNIT_SCROLL, SCROLL_AMOUNT,
+                        rotation, (double) button / InputRing.WHEEL_DELTA));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Hand a key event straight to the component's key listeners. dispatchEvent would route it through the keyboard
+     * focus manager, which drops it while the client window is not focused, and it usually isn't when the shim's
+     * renderer is in front.
+     */
+    private static void dispatchKey(Component target, KeyEvent event)
+    {
+        for (KeyListener listener : target.getKeyListeners())
+        {
+            switch (event.getID())
+            {
+                case KeyEvent.KEY_PRESSED:
+                    listener.keyPressed(event);
+                    break;
+                case KeyEvent.KEY_RELEASED:
+                    listener.keyReleased(event);
+                    break;
+                case KeyEvent.KEY_TYPED:
+                    listener.keyTyped(event);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A press or wheel event before any move happens at the origin.
+     */
+    private void ensurePosition()
+    {
+        if (x == NO_POSITION)
+        {
+            x = 0;
+            y = 0;
+        }
+    }
+
+    private int modifiersEx(int modifiers)
+    {
+        int ex = buttonsDown;
+        if ((modifiers & InputRing.MOD_SHIFT) != 0)
+            ex |= InputEvent.SHIFT_DOWN_MASK;
+        if ((modifiers & InputRing.MOD_CTRL) != 0)
+            ex |= InputEvent.CTRL_DOWN_MASK;
+        if ((modifiers & InputRing.MOD_ALT) != 0)
+            ex |= InputEvent.ALT_DOWN_MASK;
+        if ((modifiers & InputRing.MOD_META) != 0)
+            ex |= InputEvent.META_DOWN_MASK;
+        if ((modifiers & InputRing.MOD_ALT_GRAPH) != 0)
+            ex |= InputEvent.ALT_GRAPH_DOWN_MASK;
+        return ex;
+    }
+}
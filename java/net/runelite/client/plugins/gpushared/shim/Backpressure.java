@@ -0,0 +1,250 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+/**
+ * What to do with frames while the renderer falls behind.
+ *
+ * Lag is the number of frames published since the frame in the slot the renderer last claimed, see
+ * {@link FrameRing#getConsumerLag}. When it exceeds the maximum, the policy either drops frames until the renderer
+ * catches up, halves the publish rate each time it is still behind, or publishes frames at half resolution. It steps
+ * back once the renderer has kept up for a while, so a single slow frame doesn't flip the resolution back and forth.
+ *
+ * The policy and maximum lag may be changed from any thread. Everything else, from {@link #admit} to
+ * {@link #getReducedHeight}, runs on the publishing thread; a policy change takes effect at its next {@link #admit}.
+ */
+public class Backpressure
+{
+    public static final int NONE = 0;
+    public static final int DROP = 1;
+    public static final int HALVE_RATE = 2;
+    public static final int REDUCED_RESOLUTION = 3;
+
+    public static final int DEFAULT_MAX_LAG = 2;
+
+    // offered frames without lag before the policy steps back
+    private static final int RECOVER_FRAMES = 30;
+    // at most 1 in 16 frames is dropped by halving
+    private static final int MAX_RATE_SHIFT = 4;
+
+    private volatile int policy = NONE;
+    private volatile int maxLag = DEFAULT_MAX_LAG;
+
+    // publishing thread
+    private int appliedPolicy = NONE;
+    private int calm;
+    private volatile int rateShift;
+    private int rateCountdown;
+    private volatile boolean reducing;
+    private int[] reduced = new int[0];
+    private int reducedWidth;
+    private int reducedHeight;
+
+    private volatile long lag = -1;
+    private volatile long peakLag;
+    private volatile long laggingFrames;
+    private volatile long droppedFrames;
+    private volatile long reducedFrames;
+
+    /**
+     * {@link #NONE}, {@link #DROP}, {@link #HALVE_RATE} or {@link #REDUCED_RESOLUTION}.
+     */
+    public void setPolicy(int policy)
+    {
+        if (policy < NONE || policy > REDUCED_RESOLUTION)
+            throw new IllegalArgumentException("Unknown backpressure policy " + policy);
+        this.policy = policy;
+    }
+
+    public int getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * Frames the renderer may be behind before the policy applies.
+     */
+    public void setMaxLag(int frames)
+    {
+        maxLag = Math.max(1, frames);
+    }
+
+    /**
+     * Clear the state and metrics, while nothing is publishing.
+     */
+    public void reset()
+    {
+        appliedPolicy = policy;
+        calm = 0;
+        rateShift = 0;
+        rateCountdown = 0;
+        reducing = false;
+        lag = -1;
+        peakLag = 0;
+        laggingFrames = 0;
+        droppedFrames = 0;
+        reducedFrames = 0;
+    }
+
+    /**
+     * Decide whether to publish the next frame.
+     *
+     * @param lag the renderer's lag in frames, -1 when no renderer has claimed a slot
+     * @return false to drop the frame
+     */
+    public boolean admit(long lag)
+    {
+        final int policy = this.policy;
+        if (policy != appliedPolicy)
+        {
+            appliedPolicy = policy;
+            rateShift = 0;
+            rateCountdown = 0;
+            reducing = false;
+        }
+
+        this.lag = lag;
+        if (lag > peakLag)
+            peakLag = lag;
+        final boolean lagging = lag > maxLag;
+        if (lagging)
+        {
+            laggingFrames++;
+            calm = 0;
+        }
+        else if (calm < RECOVER_FRAMES)
+            calm++;
+
+        switch (policy)
+        {
+            case DROP:
+                if (!lagging)
+                    return true;
+                droppedFrames++;
+                return false;
+            case HALVE_RATE:
+                if (--rateCountdown > 0)
+                {
+                    droppedFrames++;
+                    return false;
+                }
+                if (lagging)
+                    rateShift = Math.min(rateShift + 1, MAX_RATE_SHIFT);
+                else if (calm >= RECOVER_FRAMES && rateShift > 0)
+                {
+                    rateShift--;
+                    calm = 0;
+                }
+                rateCountdown = 1 << rateShift;
+                return true;
+            case REDUCED_RESOLUTION:
+                if (lagging)
+                    reducing = true;
+                else if (calm >= RECOVER_FRAMES)
+                    reducing = false;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Whether admitted frames should be published through {@link #reduce}.
+     */
+    public boolean isReducing()
+    {
+        return reducing;
+    }
+
+    /**
+     * Average each 2x2 block of the frame, see {@link #getReducedWidth} and {@link #getReducedHeight}.
+     *
+     * @return the half resolution frame, valid until the next call
+     */
+    public int[] reduce(int width, int height, int[] pixels)
+    {
+        final int w = (width + 1) / 2;
+        final int h = (height + 1) / 2;
+        if (reduced.length < w * h)
+            reduced = new int[w * h];
+
+        for (int y = 0; y < h; y++)
+        {
+            final int row0 = y * 2 * width;
+            final int row1 = Math.min(y * 2 + 1, height - 1) * width;
+            for (int x = 0; x < w; x++)
+            {
+                final int x0 = x * 2;
+                final int x1 = Math.min(x0 + 1, width - 1);
+                final int p0 = pixels[row0 + x0], p1 = pixels[row0 + x1];
+                final int p2 = pixels[row1 + x0], p3 = pixels[row1 + x1];
+                reduced[y * w + x] = average(p0 >>> 24, p1 >>> 24, p2 >>> 24, p3 >>> 24) << 24
+                        | average((p0 >>> 16) & 0xFF, (p1 >>> 16) & 0xFF, (p2 >>> 16) & 0xFF, (p3 >>> 16) & 0xFF) << 16
+                        | average((p0 >>> 8) & 0xFF, (p1 >>> 8) & 0xFF, (p2 >>> 8) & 0xFF, (p3 >>> 8) & 0xFF) << 8
+                        | average(p0 & 0xFF, p1 & 0xFF, p2 & 0xFF, p3 & 0xFF);
+            }
+        }
+        reducedWidth = w;
+        reducedHeight = h;
+        reducedFrames++;
+        return reduced;
+    }
+
+    private static int average(int a, int b, int c, int d)
+    {
+        return (a + b + c + d + 2) >> 2;
+    }
+
+    public int getReducedWidth()
+    {
+        return reducedWidth;
+    }
+
+    public int getReducedHeight()
+    {
+        return reducedHeight;
+    }
+
+    /**
+     * The renderer's lag when the last frame was offered, -1 if no slot was claimed.
+     */
+    public long getLag()
+    {
+        return lag;
+    }
+
+    public long getPeakLag()
+    {
+        return peakLag;
+    }
+
+    /**
+     * Frames offered while the renderer was more than the maximum lag behind.
+     */
+    public long getLaggingFrames()
+    {
+        return laggingFrames;
+    }
+
+    /**
+     * Frames not published because of the policy.
+     */
+    public long getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
+    /**
+     * Frames published at half resolution.
+     */
+    public long getReducedFrames()
+    {
+        return reducedFrames;
+    }
+
+    /**
+     * One frame in this many is published by {@link #HALVE_RATE}.
+     */
+    public int getRateDivisor()
+    {
+        return 1 << rateShift;
+    }
+}
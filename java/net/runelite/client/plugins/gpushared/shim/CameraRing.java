@@ -0,0 +1,146 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writer side of the RLCameraRing section: the last few camera states with their projection, so a renderer running
+ * at a higher refresh rate than the client can extrapolate camera motion between them.
+ *
+ * Each state records the world projection the GPU plugin draws with, the viewport, the game cycle and a
+ * {@link System#nanoTime} timestamp. States are written to the entry after the newest one; the entry's sequence is
+ * cleared while it is rewritten and set to its state number when complete, then head is advanced. A reader checks
+ * the entry sequence before and after copying it, so it only has to retry if the ring wrapped around during the copy.
+ */
+public class CameraRing
+{
+    public static final int CAPACITY = 8;
+
+    // RLCameraRing
+    private static final int CAPACITY_OFFSET = 0;
+    private static final int HEAD_OFFSET = 8;
+    private static final int ENTRIES_OFFSET = 64;
+
+    // RLCameraFrame
+    private static final int ENTRY_SEQUENCE_OFFSET = 0;
+    private static final int ENTRY_NANOS_OFFSET = 8;
+    private static final int ENTRY_GAME_CYCLE_OFFSET = 16;
+    private static final int ENTRY_SCALE_OFFSET = 20;
+    private static final int ENTRY_VIEWPORT_X_OFFSET = 24;
+    private static final int ENTRY_VIEWPORT_Y_OFFSET = 28;
+    private static final int ENTRY_VIEWPORT_WIDTH_OFFSET = 32;
+    private static final int ENTRY_VIEWPORT_HEIGHT_OFFSET = 36;
+    private static final int ENTRY_CANVAS_WIDTH_OFFSET = 40;
+    private static final int ENTRY_CANVAS_HEIGHT_OFFSET = 44;
+    private static final int ENTRY_STRETCHED_WIDTH_OFFSET = 48;
+    private static final int ENTRY_STRETCHED_HEIGHT_OFFSET = 52;
+    private static final int ENTRY_CAMERA_X_OFFSET = 64;
+    private static final int ENTRY_CAMERA_Y_OFFSET = 68;
+    private static final int ENTRY_CAMERA_Z_OFFSET = 72;
+    private static final int ENTRY_YAW_OFFSET = 76;
+    private static final int ENTRY_PITCH_OFFSET = 80;
+    private static final int ENTRY_PROJECTION_OFFSET = 128;
+    private static final int ENTRY_SIZE = 192;
+
+    public static final int SIZE = ENTRIES_OFFSET + CAPACITY * ENTRY_SIZE;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle FLOAT = MethodHandles.byteBufferViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Reusable camera state, filled in by the caller of {@link #write}.
+     */
+    public static class State
+    {
+        public long timestampNanos;
+        public int gameCycle;
+        public int scale;
+        public int viewportX;
+        public int viewportY;
+        public int viewportWidth;
+        public int viewportHeight;
+        public int canvasWidth;
+        public int canvasHeight;
+        // the canvas size when stretched mode is off
+        public int stretchedWidth;
+        public int stretchedHeight;
+        public float cameraX;
+        public float cameraY;
+        public float cameraZ;
+        // radians
+        public float yaw;
+        public float pitch;
+        // column-major, as uploaded with glUniformMatrix4fv
+        public final float[] projection = new float[16];
+    }
+
+    private final ByteBuffer buf;
+    private final int base;
+    private long head;
+
+    public CameraRing(ByteBuffer region, int base)
+    {
+        if (region.capacity() < base + SIZE)
+            throw new IllegalArgumentException("Camera ring section out of bounds: " + (base + SIZE) + " > " + region.capacity());
+        this.buf = region;
+        this.base = base;
+    }
+
+    private int entryOffset(long state)
+    {
+        return base + ENTRIES_OFFSET + (int) (state % CAPACITY) * ENTRY_SIZE;
+    }
+
+    public void reset()
+    {
+        head = 0;
+        INT.set(buf, base + CAPACITY_OFFSET, CAPACITY);
+        for (int i = 0; i < CAPACITY; i++)
+            LONG.set(buf, entryOffset(i) + ENTRY_SEQUENCE_OFFSET, 0L);
+        LONG.setRelease(buf, base + HEAD_OFFSET, 0L);
+    }
+
+    public void write(State state)
+    {
+        final long number = head + 1;
+        final int off = entryOffset(head);
+
+        // readers of the entry's previous state see it change and skip it
+        LONG.setRelease(buf, off + ENTRY_SEQUENCE_OFFSET, 0L);
+        VarHandle.storeStoreFence();
+
+        LONG.set(buf, off + ENTRY_NANOS_OFFSET, state.timestampNanos);
+        INT.set(buf, off + ENTRY_GAME_CYCLE_OFFSET, state.gameCycle);
+        INT.set(buf, off + ENTRY_SCALE_OFFSET, state.scale);
+        INT.set(buf, off + ENTRY_VIEWPORT_X_OFFSET, state.viewportX);
+        INT.set(buf, off + ENTRY_VIEWPORT_Y_OFFSET, state.viewportY);
+        INT.set(buf, off + ENTRY_VIEWPORT_WIDTH_OFFSET, state.viewportWidth);
+        INT.set(buf, off + ENTRY_VIEWPORT_HEIGHT_OFFSET, state.viewportHeight);
+        INT.set(buf, off + ENTRY_CANVAS_WIDTH_OFFSET, state.canvasWidth);
+        INT.set(buf, off + ENTRY_CANVAS_HEIGHT_OFFSET, state.canvasHeight);
+        INT.set(buf, off + ENTRY_STRETCHED_WIDTH_OFFSET, state.stretchedWidth);
+        INT.set(buf, off + ENTRY_STRETCHED_HEIGHT_OFFSET, state.stretchedHeight);
+        FLOAT.set(buf, off + ENTRY_CAMERA_X_OFFSET, state.cameraX);
+        FLOAT.set(buf, off + ENTRY_CAMERA_Y_OFFSET, state.cameraY);
+        FLOAT.set(buf, off + ENTRY_CAMERA_Z_OFFSET, state.cameraZ);
+        FLOAT.set(buf, off + ENTRY_YAW_OFFSET, state.yaw);
+        FLOAT.set(buf, off + ENTRY_PITCH_OFFSET, state.pitch);
+        for (int i = 0; i < 16; i++)
+            FLOAT.set(buf, off + ENTRY_PROJECTION_OFFSET + i * Float.BYTES, state.projection[i]);
+
+        LONG.setRelease(buf, off + ENTRY_SEQUENCE_OFFSET, number);
+        LONG.setRelease(buf, base + HEAD_OFFSET, number);
+        head = number;
+    }
+
+    /**
+     * States written since the last reset.
+     */
+    public long getHead()
+    {
+        return head;
+    }
+}
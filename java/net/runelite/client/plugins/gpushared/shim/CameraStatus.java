@@ -0,0 +1,84 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writer side of the RLCameraStatus section.
+ *
+ * The camera is published as a latched seqlock: two copies of the camera state and a sequence word whose
+ * low bit says which copy is stable. Each update bumps the sequence to odd and rewrites copy 0 while readers
+ * use copy 1, then bumps it to even and rewrites copy 1 while readers use copy 0. A reader never waits for
+ * the writer, and only retries if the sequence moved while it was copying 24 bytes.
+ */
+public class CameraStatus
+{
+    // RLCameraStatus
+    private static final int SEQUENCE_OFFSET = 0;
+    private static final int COPIES_OFFSET = 8;
+
+    // RLCameraState
+    private static final int X_OFFSET = 0;
+    private static final int Y_OFFSET = 4;
+    private static final int Z_OFFSET = 8;
+    private static final int YAW_OFFSET = 12;
+    private static final int PITCH_OFFSET = 16;
+    private static final int SCALE_OFFSET = 20;
+    private static final int STATE_SIZE = 24;
+
+    public static final int SIZE = COPIES_OFFSET + 2 * STATE_SIZE;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer buf;
+    private final int base;
+    private long sequence;
+
+    public CameraStatus(ByteBuffer region, int base)
+    {
+        if (region.capacity() < base + SIZE)
+            throw new IllegalArgumentException("Camera section out of bounds: " + (base + SIZE) + " > " + region.capacity());
+        this.buf = region;
+        this.base = base;
+    }
+
+    public void reset()
+    {
+        sequence = 0;
+        for (int copy = 0; copy < 2; copy++)
+            writeState(copy, 0, 0, 0, 0, 0, 0);
+        LONG.setRelease(buf, base + SEQUENCE_OFFSET, 0L);
+    }
+
+    public void write(int x, int y, int z, int yaw, int pitch, int scale)
+    {
+        // odd: readers move to copy 1 while copy 0 is rewritten
+        LONG.setRelease(buf, base + SEQUENCE_OFFSET, ++sequence);
+        VarHandle.storeStoreFence();
+        writeState(0, x, y, z, yaw, pitch, scale);
+
+        // even: readers move back to copy 0 while copy 1 catches up
+        LONG.setRelease(buf, base + SEQUENCE_OFFSET, ++sequence);
+        VarHandle.storeStoreFence();
+        writeState(1, x, y, z, yaw, pitch, scale);
+    }
+
+    private void writeState(int copy, int x, int y, int z, int yaw, int pitch, int scale)
+    {
+        final int off = base + COPIES_OFFSET + copy * STATE_SIZE;
+        INT.set(buf, off + X_OFFSET, x);
+        INT.set(buf, off + Y_OFFSET, y);
+        INT.set(buf, off + Z_OFFSET, z);
+        INT.set(buf, off + YAW_OFFSET, yaw);
+        INT.set(buf, off + PITCH_OFFSET, pitch);
+        INT.set(buf, off + SCALE_OFFSET, scale);
+    }
+
+    public long getSequence()
+    {
+        return sequence;
+    }
+}
@@ -0,0 +1,111 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+/**
+ * A bounded list of changed rectangles in a frame, or "the whole frame".
+ *
+ * When more than {@link #MAX_RECTS} rectangles are added, each new one is merged into the existing rectangle whose
+ * area grows the least, so the list always covers every change but may over-cover it. A rectangle directly below
+ * the last one with the same columns extends it instead.
+ */
+public class DirtyRects
+{
+    public static final int MAX_RECTS = 16;
+
+    private final int[] rects = new int[MAX_RECTS * 4]; // x, y, width, height
+    private int count;
+    private boolean full;
+
+    public void clear()
+    {
+        count = 0;
+        full = false;
+    }
+
+    public void setFull()
+    {
+        count = 0;
+        full = true;
+    }
+
+    public boolean isFull()
+    {
+        return full;
+    }
+
+    public int count()
+    {
+        return count;
+    }
+
+    public int x(int i)
+    {
+        return rects[i * 4];
+    }
+
+    public int y(int i)
+    {
+        return rects[i * 4 + 1];
+    }
+
+    public int width(int i)
+    {
+        return rects[i * 4 + 2];
+    }
+
+    public int height(int i)
+    {
+        return rects[i * 4 + 3];
+    }
+
+    public void add(int x, int y, int width, int height)
+    {
+        if (full || width <= 0 || height <= 0)
+            return;
+        if (count > 0)
+        {
+            final int last = count - 1;
+            if (x(last) == x && width(last) == width && y(last) + height(last) == y)
+            {
+                rects[last * 4 + 3] += height;
+                return;
+            }
+        }
+        if (count < MAX_RECTS)
+        {
+            set(count++, x, y, width, height);
+            return;
+        }
+
+        int best = 0;
+        long bestGrowth = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++)
+        {
+            final long growth = unionArea(i, x, y, width, height) - (long) width(i) * height(i);
+            if (growth < bestGrowth)
+            {
+                best = i;
+                bestGrowth = growth;
+            }
+        }
+        final int x0 = Math.min(x(best), x);
+        final int y0 = Math.min(y(best), y);
+        final int x1 = Math.max(x(best) + width(best), x + width);
+        final int y1 = Math.max(y(best) + height(best), y + height);
+        set(best, x0, y0, x1 - x0, y1 - y0);
+    }
+
+    private void set(int i, int x, int y, int width, int height)
+    {
+        rects[i * 4] = x;
+        rects[i * 4 + 1] = y;
+        rects[i * 4 + 2] = width;
+        rects[i * 4 + 3] = height;
+    }
+
+    private long unionArea(int i, int x, int y, int width, int height)
+    {
+        final long w = Math.max(x(i) + width(i), x + width) - Math.min(x(i), x);
+        final long h = Math.max(y(i) + height(i), y + height) - Math.min(y(i), y);
+        return w * h;
+    }
+}
@@ -0,0 +1,221 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes frames to shared memory from its own thread.
+ *
+ * {@link #submit} copies the caller's pixels into a pooled buffer and queues it; the publisher thread does the hashing,
+ * conversion, copy and signalling. The queue is bounded and drops the oldest frame when full, since only the newest
+ * frame matters to the renderer. Buffers are reused, so steady-state submits don't allocate.
+ */
+public class FramePublisher
+{
+    public static final int DEFAULT_QUEUE_CAPACITY = 2;
+
+    private static final long POLL_MILLIS = 100;
+    // weight of the newest sample in the average latency, out of 16
+    private static final int LATENCY_WEIGHT = 2;
+
+    @FunctionalInterface
+    public interface Sink
+    {
+        boolean publish(int width, int height, int[] pixels);
+    }
+
+    private static class Frame
+    {
+        int[] pixels = new int[0];
+        int width;
+        int height;
+        long submitted;
+    }
+
+    private final Sink sink;
+    private final ArrayBlockingQueue<Frame> queue;
+    // one more than the queue can hold for the frame being published, and one for the frame being copied
+    private final ArrayBlockingQueue<Frame> pool;
+    private volatile boolean running;
+    private Thread thread;
+
+    private volatile long submitted;
+    private volatile long published;
+    private volatile long dropped;
+    private volatile long lastLatencyNanos;
+    private volatile long averageLatencyNanos;
+    private volatile long maxLatencyNanos;
+
+    public FramePublisher(Sink sink)
+    {
+        this(sink, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public FramePublisher(Sink sink, int queueCapacity)
+    {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.pool = new ArrayBlockingQueue<>(queueCapacity + 2);
+        for (int i = 0; i < queueCapacity + 2; i++)
+            pool.add(new Frame());
+    }
+
+    public void start()
+    {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(this::run, "gpushared-publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the publisher thread, dropping queued frames. Waits, without a timeout, for a publish in progress to finish,
+     * so the caller can unmap the region once this returns.
+     */
+    public void stop()
+    {
+        if (thread == null)
+            return;
+        running = false;
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        thread = null;
+        Frame frame;
+        while ((frame = queue.poll()) != null)
+            pool.offer(frame);
+    }
+
+    /**
+     * Snapshot a frame and queue it for publishing. Never blocks; drops the oldest queued frame if the queue is full.
+     *
+     * @return false if the frame is empty or larger than the pixel array
+     */
+    public boolean submit(int width, int height, int[] pixels)
+    {
+        if (width <= 0 || height <= 0 || (long) width * height > pixels.length)
+            return false;
+        final int count = width * height;
+
+        Frame frame = pool.poll();
+        if (frame == null)
+        {
+            frame = queue.poll();
+            if (frame == null)
+                return false;
+            dropped++;
+        }
+        if (frame.pixels.length < count)
+            frame.pixels = new int[count];
+        System.arraycopy(pixels, 0, frame.pixels, 0, count);
+        frame.width = width;
+        frame.height = height;
+        frame.submitted = System.nanoTime();
+
+        while (!queue.offer(frame))
+        {
+            final Frame oldest = queue.poll();
+            if (oldest != null)
+            {
+                pool.offer(oldest);
+                dropped++;
+            }
+        }
+        submitted++;
+        return true;
+    }
+
+    private void run()
+    {
+        while (running)
+        {
+            final Frame frame;
+            try
+            {
+                frame = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                continue;
+            }
+            if (frame == null)
+                continue;
+
+            try
+            {
+                if (sink.publish(frame.width, frame.height, frame.pixels))
+                {
+                    final long latency = System.nanoTime() - frame.submitted;
+                    lastLatencyNanos = latency;
+                    averageLatencyNanos = published == 0 ? latency
+                            : averageLatencyNanos + (latency - averageLatencyNanos) * LATENCY_WEIGHT / 16;
+                    if (latency > maxLatencyNanos)
+                        maxLatencyNanos = latency;
+                    published++;
+                }
+            }
+            finally
+            {
+                pool.offer(frame);
+            }
+        }
+    }
+
+    /**
+     * Frames waiting to be published.
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    public long getSubmitted()
+    {
+        return submitted;
+    }
+
+    public long getPublished()
+    {
+        return published;
+    }
+
+    /**
+     * Frames replaced by a newer one before they were published.
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    /**
+     * Time from {@link #submit} to the frame being visible in shared memory, for the newest published frame.
+     */
+    public long getLastLatencyNanos()
+    {
+        return lastLatencyNanos;
+    }
+
+    public long getAverageLatencyNanos()
+    {
+        return averageLatencyNanos;
+    }
+
+    public long getMaxLatencyNanos()
+    {
+        return maxLatencyNanos;
+    }
+}
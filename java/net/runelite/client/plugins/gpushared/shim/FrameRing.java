@@ -0,0 +1,567 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Producer side of the RLFrameRing section.
+ *
+ * The ring holds N frame slots. RuneLite writes each frame into a slot that is neither the newest published
+ * slot nor the slot the renderer has claimed, then publishes it by storing its index in producer_index.
+ * The renderer claims a slot by storing its index in consumer_index and re-reading producer_index, so the
+ * producer never blocks and never writes into a slot that is being read.
+ *
+ * Slot metadata lives in the main region, the pixels live in a separate frame segment named
+ * {@code <region>.frames.<generation>} that is sized from the canvas. When the canvas outgrows it, a larger
+ * segment is mapped under the next generation and the old one is released.
+ *
+ * Changes are found by hashing tiles, see {@link FrameTiles}. The slot records the dirty tiles and the changed
+ * rectangles built from them, relative to the previous sequence, so the renderer can update only those parts of its
+ * texture, and only the tiles of the slot that are stale are copied. When too much changed the frame is published
+ * as a full frame.
+ *
+ * With {@link #ENCODING_SPANS} a slot instead holds, per scanline, only the spans of pixels with non-zero alpha.
+ * The interface is mostly transparent, so this writes a fraction of the raw frame; frames that would not get smaller
+ * fall back to raw.
+ *
+ * The renderer picks the {@link PixelFormat} it wants in requested_format and pixels are converted as they are
+ * copied, so it can upload them without swizzling. Changing the format republishes the whole frame.
+ */
+public class FrameRing
+{
+    public static final int DEFAULT_SLOTS = 3;
+    public static final int DEFAULT_MAX_PIXELS = 3840 * 2160;
+    public static final int SEGMENT_MAGIC = 0x534D5246; // "FRMS"
+    public static final int RECTS_FULL = -1;
+    public static final double DEFAULT_FULL_FRAME_THRESHOLD = 0.5;
+
+    public static final int ENCODING_RAW = 0;
+    public static final int ENCODING_SPANS = 1;
+
+    private static final int ALPHA_MASK = 0xFF000000;
+
+    // capacity is rounded up to whole blocks in each dimension so small resizes don't remap
+    private static final int CAPACITY_BLOCK = 256;
+
+    // RLFrameRing
+    private static final int SLOT_COUNT_OFFSET = 0;
+    private static final int PRODUCER_INDEX_OFFSET = 4;
+    private static final int CONSUMER_INDEX_OFFSET = 8;
+    private static final int GENERATION_OFFSET = 12;
+    private static final int SEQUENCE_OFFSET = 16;
+    private static final int SLOT_BYTES_OFFSET = 24;
+    private static final int HEARTBEAT_OFFSET = 32;
+    private static final int SKIPPED_OFFSET = 40;
+    private static final int REQUESTED_FORMAT_OFFSET = 48;
+    private static final int YUV_MATRIX_OFFSET = 52;
+    private static final int YUV_RANGE_OFFSET = 56;
+    private static final int SLOTS_OFFSET = 64;
+
+    // RLFrameSlot
+    private static final int SLOT_SEQUENCE_OFFSET = 0;
+    private static final int SLOT_WIDTH_OFFSET = 8;
+    private static final int SLOT_HEIGHT_OFFSET = 12;
+    private static final int SLOT_RECT_COUNT_OFFSET = 16;
+    private static final int SLOT_BASE_SEQUENCE_OFFSET = 24;
+    private static final int SLOT_TILE_SIZE_OFFSET = 32;
+    private static final int SLOT_TILES_X_OFFSET = 36;
+    private static final int SLOT_TILES_Y_OFFSET = 40;
+    private static final int SLOT_ENCODING_OFFSET = 44;
+    private static final int SLOT_ENCODED_LENGTH_OFFSET = 48;
+    private static final int SLOT_FORMAT_OFFSET = 52;
+    private static final int SLOT_YUV_MATRIX_OFFSET = 56;
+    private static final int SLOT_YUV_RANGE_OFFSET = 58;
+    private static final int SLOT_SIZE = 64;
+
+    // RLFrameRect, RLFrameRing.rects[slot][RL_FRAME_MAX_RECTS] follows the slots
+    private static final int RECT_X_OFFSET = 0;
+    private static final int RECT_Y_OFFSET = 4;
+    private static final int RECT_WIDTH_OFFSET = 8;
+    private static final int RECT_HEIGHT_OFFSET = 12;
+    private static final int RECT_SIZE = 16;
+    private static final int SLOT_RECTS_SIZE = DirtyRects.MAX_RECTS * RECT_SIZE;
+
+    // RLFrameRing.dirty_tiles[slot][RL_FRAME_BITMAP_LONGS] follows the rects
+    private static final int SLOT_BITMAP_SIZE = FrameTiles.BITMAP_LONGS * Long.BYTES;
+
+    // RLFrameSegment
+    private static final int SEGMENT_MAGIC_OFFSET = 0;
+    private static final int SEGMENT_GENERATION_OFFSET = 4;
+    private static final int SEGMENT_SLOT_BYTES_OFFSET = 8;
+    private static final int SEGMENT_SLOT_COUNT_OFFSET = 16;
+    private static final int SEGMENT_HEADER_SIZE = 64;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer buf;
+    private final int base;
+    private final int slots;
+    private final String regionName;
+    private final IntBuffer[] slotPixels;
+    private final SlotCopier copier;
+    // tiles changed since the frame each slot holds
+    private final long[][] stale;
+    private final boolean[] staleFull;
+    private final FrameTiles tiles = new FrameTiles();
+    private final DirtyRects changed = new DirtyRects();
+
+    // set by the client thread, read by the publishing thread
+    private volatile int maxPixels = DEFAULT_MAX_PIXELS;
+    private volatile double fullFrameThreshold = DEFAULT_FULL_FRAME_THRESHOLD;
+    private volatile int encoding = ENCODING_RAW;
+    private SharedMemoryTransport segmentTransport;
+    private int generation;
+    private int slotCapacity; // pixels
+    private long sequence;
+    private int producerIndex = -1;
+    private long heartbeat;
+    private long skipped;
+    private int format = PixelFormat.BGRA;
+    private int yuvMatrix = YuvConverter.BT601;
+    private int yuvRange = YuvConverter.LIMITED;
+
+    public FrameRing(ByteBuffer region, int base, int slots, String regionName)
+    {
+        if (slots < 3)
+            throw new IllegalArgumentException("Frame ring needs at least 3 slots, got " + slots);
+        if (region.capacity() < base + size(slots))
+            throw new IllegalArgumentException("Frame section out of bounds: " + (base + size(slots)) + " > " + region.capacity());
+
+        this.buf = region;
+        this.base = base;
+        this.slots = slots;
+        this.regionName = regionName;
+        this.slotPixels = new IntBuffer[slots];
+        this.copier = new SlotCopier(slots);
+        this.stale = new long[slots][FrameTiles.BITMAP_LONGS];
+        this.staleFull = new boolean[slots];
+    }
+
+    public static int size(int slots)
+    {
+        return SLOTS_OFFSET + slots * (SLOT_SIZE + SLOT_RECTS_SIZE + SLOT_BITMAP_SIZE);
+    }
+
+    public static String segmentName(String regionName, int generation)
+    {
+        return regionName + ".frames." + generation;
+    }
+
+    private int slotOffset(int slot)
+    {
+        return base + SLOTS_OFFSET + slot * SLOT_SIZE;
+    }
+
+    private int rectsOffset(int slot)
+    {
+        return base + SLOTS_OFFSET + slots * SLOT_SIZE + slot * SLOT_RECTS_SIZE;
+    }
+
+    private int bitmapOffset(int slot)
+    {
+        return base + SLOTS_OFFSET + slots * (SLOT_SIZE + SLOT_RECTS_SIZE) + slot * SLOT_BITMAP_SIZE;
+    }
+
+    /**
+     * Largest frame, in pixels, that will be published. Larger frames are dropped.
+     */
+    public void setMaxPixels(int maxPixels)
+    {
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Fraction of the tiles that may change before the frame is published as a full frame.
+     */
+    public void setFullFrameThreshold(double fraction)
+    {
+        this.fullFrameThreshold = fraction;
+    }
+
+    /**
+     * {@link #ENCODING_RAW} or {@link #ENCODING_SPANS}. Takes effect from the next frame.
+     */
+    public void setEncoding(int encoding)
+    {
+        if (encoding != ENCODING_RAW && encoding != ENCODING_SPANS)
+            throw new IllegalArgumentException("Unknown frame encoding " + encoding);
+        this.encoding = encoding;
+    }
+
+    /**
+     * Reset the ring to the empty state and release the frame segment. Only safe while no renderer is attached.
+     */
+    public void reset()
+    {
+        releaseSegment();
+        // continue after any generation a renderer may still have mapped from an earlier session
+        generation = Math.max(generation, (int) INT.getVolatile(buf, base + GENERATION_OFFSET));
+        sequence = 0;
+        producerIndex = -1;
+        heartbeat = 0;
+        skipped = 0;
+        slotCapacity = 0;
+        tiles.invalidate();
+        INT.setVolatile(buf, base + SLOT_COUNT_OFFSET, slots);
+        for (int i = 0; i < slots; i++)
+        {
+            int off = slotOffset(i);
+            INT.set(buf, off + SLOT_WIDTH_OFFSET, -1);
+            INT.set(buf, off + SLOT_HEIGHT_OFFSET, -1);
+            INT.set(buf, off + SLOT_RECT_COUNT_OFFSET, RECTS_FULL);
+            LONG.set(buf, off + SLOT_BASE_SEQUENCE_OFFSET, 0L);
+            LONG.set(buf, off + SLOT_SEQUENCE_OFFSET, 0L);
+            staleFull[i] = true;
+        }
+        LONG.set(buf, base + SLOT_BYTES_OFFSET, 0L);
+        LONG.setVolatile(buf, base + SEQUENCE_OFFSET, 0L);
+        LONG.setVolatile(buf, base + HEARTBEAT_OFFSET, 0L);
+        LONG.setVolatile(buf, base + SKIPPED_OFFSET, 0L);
+        INT.setVolatile(buf, base + CONSUMER_INDEX_OFFSET, -1);
+        INT.setVolatile(buf, base + PRODUCER_INDEX_OFFSET, -1);
+        INT.setRelease(buf, base + GENERATION_OFFSET, generation);
+    }
+
+    /**
+     * Copy the changed parts of a frame into a free slot and make it the newest frame. Never blocks. A frame
+     * identical to the newest one only bumps the heartbeat and is counted as skipped.
+     *
+     * @return false if the frame is larger than the maximum or the frame segment could not be mapped
+     */
+    public boolean publish(int width, int height, int[] pixels)
+    {
+        if (width <= 0 || height <= 0)
+            return false;
+        final long count = (long) width * height;
+        if (count > maxPixels || count > pixels.length)
+            return false;
+        if (count > slotCapacity && !grow(width, height))
+            return false;
+
+        final int requested = (int) INT.getAcquire(buf, base + REQUESTED_FORMAT_OFFSET);
+        final int matrix = (int) INT.getAcquire(buf, base + YUV_MATRIX_OFFSET);
+        final int range = (int) INT.getAcquire(buf, base + YUV_RANGE_OFFSET);
+        final boolean recolor = YuvConverter.isValid(matrix, range) && (matrix != yuvMatrix || range != yuvRange);
+        if (recolor)
+        {
+            yuvMatrix = matrix;
+            yuvRange = range;
+            copier.setYuv(matrix, range);
+        }
+        final boolean reformat = requested != format && PixelFormat.isValid(requested)
+                || recolor && YuvConverter.isYuv(format);
+        if (reformat)
+        {
+            // every slot holds the old format
+            if (PixelFormat.isValid(requested))
+                format = requested;
+            Arrays.fill(staleFull, true);
+        }
+
+        final boolean resized = tiles.update(pixels, width, height);
+        final boolean full = resized || reformat || tiles.dirtyCount() > fullFrameThreshold * tiles.tileCount();
+        LONG.setRelease(buf, base + HEARTBEAT_OFFSET, ++heartbeat);
+        if (!full && tiles.dirtyCount() == 0 && producerIndex >= 0)
+        {
+            // identical to the newest slot, nothing to copy or publish
+            LONG.setRelease(buf, base + SKIPPED_OFFSET, ++skipped);
+            return true;
+        }
+
+        // Volatile load pairs with the renderer's claim-then-recheck, see rl_gpushared_shim.h
+        final int consumerIndex = (int) INT.getVolatile(buf, base + CONSUMER_INDEX_OFFSET);
+        int slot = producerIndex;
+        do
+        {
+            slot = (slot + 1) % slots;
+        }
+        while (slot == producerIndex || slot == consumerIndex);
+
+        final long[] dirty = tiles.dirty();
+        for (int i = 0; i < slots; i++)
+        {
+            if (full)
+                staleFull[i] = true;
+            else
+            {
+                for (int j = 0; j < dirty.length; j++)
+                    stale[i][j] |= dirty[j];
+            }
+        }
+        // spans carry 32-bit pixels, other formats have no alpha to find them by
+        final boolean spans = encoding == ENCODING_SPANS && PixelFormat.hasAlpha(format);
+        final int encoded = spans ? encodeSpans(slot, width, height, pixels) : -1;
+        // after an encoding attempt the slot no longer holds raw pixels to patch
+        if (spans)
+            staleFull[slot] = true;
+        if (encoded < 0)
+        {
+            copier.copy(slot, format, staleFull[slot] ? null : stale[slot], tiles, width, height, pixels);
+            staleFull[slot] = false;
+            Arrays.fill(stale[slot], 0L);
+        }
+
+        if (full)
+            changed.setFull();
+        else
+            tiles.toRects(changed);
+
+        final long seq = ++sequence;
+        final int off = slotOffset(slot);
+        INT.set(buf, off + SLOT_WIDTH_OFFSET, width);
+        INT.set(buf, off + SLOT_HEIGHT_OFFSET, height);
+        writeRects(slot);
+        writeTiles(slot, full);
+        INT.set(buf, off + SLOT_ENCODING_OFFSET, encoded >= 0 ? ENCODING_SPANS : ENCODING_RAW);
+        INT.set(buf, off + SLOT_ENCODED_LENGTH_OFFSET, encoded >= 0 ? encoded : (int) count);
+        INT.set(buf, off + SLOT_FORMAT_OFFSET, format);
+        buf.putShort(off + SLOT_YUV_MATRIX_OFFSET, (short) yuvMatrix);
+        buf.putShort(off + SLOT_YUV_RANGE_OFFSET, (short) yuvRange);
+        LONG.set(buf, off + SLOT_BASE_SEQUENCE_OFFSET, seq - 1);
+        LONG.setRelease(buf, off + SLOT_SEQUENCE_OFFSET, seq);
+        INT.setVolatile(buf, base + PRODUCER_INDEX_OFFSET, slot);
+        LONG.setRelease(buf, base + SEQUENCE_OFFSET, seq);
+        producerIndex = slot;
+        return true;
+    }
+
+    /**
+     * Write the frame as a row table followed by each row's spans of non-transparent pixels:
+     * {@code int rowStart[height]}, then per row {@code int spanCount} and {@code (int x, int length, pixels...)}
+     * per span. Offsets are in ints from the start of the slot.
+     *
+     * @return ints written, or -1 if the encoding would not be smaller than the raw frame
+     */
+    private int encodeSpans(int slot, int width, int height, int[] pixels)
+    {
+        final IntBuffer dst = slotPixels[slot];
+        final int limit = width * height;
+        int pos = height;
+        for (int y = 0; y < height; y++)
+        {
+            if (pos >= limit)
+                return -1;
+            dst.put(y, pos);
+            final int countPos = pos++;
+            final int row = y * width;
+            int spans = 0;
+            int x = 0;
+            while (true)
+            {
+                while (x < width && (pixels[row + x] & ALPHA_MASK) == 0)
+                    x++;
+                if (x == width)
+                    break;
+                final int start = x;
+                while (x < width && (pixels[row + x] & ALPHA_MASK) != 0)
+                    x++;
+                final int length = x - start;
+                if (pos + 2 + length > limit)
+                    return -1;
+                dst.put(pos, start);
+                dst.put(pos + 1, length);
+                copier.write(slot, format, pos + 2, pixels, row + start, length);
+                pos += 2 + length;
+                spans++;
+            }
+            dst.put(countPos, spans);
+        }
+        return pos;
+    }
+
+    private void writeRects(int slot)
+    {
+        if (changed.isFull())
+        {
+            INT.set(buf, slotOffset(slot) + SLOT_RECT_COUNT_OFFSET, RECTS_FULL);
+            return;
+        }
+        final int rects = rectsOffset(slot);
+        for (int i = 0; i < changed.count(); i++)
+        {
+            final int off = rects + i * RECT_SIZE;
+            INT.set(buf, off + RECT_X_OFFSET, changed.x(i));
+            INT.set(buf, off + RECT_Y_OFFSET, changed.y(i));
+            INT.set(buf, off + RECT_WIDTH_OFFSET, changed.width(i));
+            INT.set(buf, off + RECT_HEIGHT_OFFSET, changed.height(i));
+        }
+        INT.set(buf, slotOffset(slot) + SLOT_RECT_COUNT_OFFSET, changed.count());
+    }
+
+    private void writeTiles(int slot, boolean full)
+    {
+        final int off = slotOffset(slot);
+        INT.set(buf, off + SLOT_TILE_SIZE_OFFSET, tiles.tileSize());
+        INT.set(buf, off + SLOT_TILES_X_OFFSET, tiles.tilesX());
+        INT.set(buf, off + SLOT_TILES_Y_OFFSET, tiles.tilesY());
+        final long[] dirty = tiles.dirty();
+        final int bitmap = bitmapOffset(slot);
+        for (int i = 0; i < dirty.length; i++)
+            LONG.set(buf, bitmap + i * Long.BYTES, full ? -1L : dirty[i]);
+    }
+
+    private static int roundUp(int value)
+    {
+        return (value + CAPACITY_BLOCK - 1) / CAPACITY_BLOCK * CAPACITY_BLOCK;
+    }
+
+    /**
+     * Map a frame segment big enough for the canvas under the next generation. The renderer notices the new
+     * generation, maps the new segment and drops the old one.
+     */
+    private boolean grow(int width, int height)
+    {
+        final int capacity = (int) Math.max((long) width * height, Math.min((long) roundUp(width) * roundUp(height), maxPixels));
+        final long slotBytes = ((long) capacity * Integer.BYTES + 63) & ~63L;
+        final long segmentSize = SEGMENT_HEADER_SIZE + slotBytes * slots;
+        if (segmentSize > Integer.MAX_VALUE)
+            return false;
+
+        final int nextGeneration = generation + 1;
+        final String name = segmentName(regionName, nextGeneration);
+        final SharedMemoryTransport transport = SharedMemoryTransport.forName(name);
+        final ByteBuffer segment;
+        try
+        {
+            segment = transport.open(name, (int) segmentSize);
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+
+        INT.set(segment, SEGMENT_GENERATION_OFFSET, nextGeneration);
+        LONG.set(segment, SEGMENT_SLOT_BYTES_OFFSET, slotBytes);
+        INT.set(segment, SEGMENT_SLOT_COUNT_OFFSET, slots);
+        INT.setRelease(segment, SEGMENT_MAGIC_OFFSET, SEGMENT_MAGIC);
+
+        for (int i = 0; i < slots; i++)
+        {
+            final int off = (int) (SEGMENT_HEADER_SIZE + slotBytes * i);
+            final ByteBuffer slot = segment.duplicate()
+                    .position(off)
+                    .limit(off + capacity * Integer.BYTES)
+                    .slice()
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            slotPixels[i] = slot.asIntBuffer();
+            copier.map(i, slot);
+        }
+
+        // Unpublish before switching generation, so a renderer never pairs an old index with the new segment
+        producerIndex = -1;
+        Arrays.fill(staleFull, true);
+        INT.setVolatile(buf, base + PRODUCER_INDEX_OFFSET, -1);
+        LONG.set(buf, base + SLOT_BYTES_OFFSET, slotBytes);
+        INT.setVolatile(buf, base + GENERATION_OFFSET, nextGeneration);
+
+        releaseSegment();
+        segmentTransport = transport;
+        generation = nextGeneration;
+        slotCapacity = capacity;
+        return true;
+    }
+
+    private void releaseSegment()
+    {
+        if (segmentTransport != null)
+        {
+            segmentTransport.close();
+            segmentTransport.unlink();
+            segmentTransport = null;
+        }
+    }
+
+    public void close()
+    {
+        releaseSegment();
+        slotCapacity = 0;
+    }
+
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Frames offered to {@link #publish}, including skipped ones.
+     */
+    public long getHeartbeat()
+    {
+        return heartbeat;
+    }
+
+    /**
+     * Frames that were identical to the newest slot and not published.
+     */
+    public long getSkippedFrames()
+    {
+        return skipped;
+    }
+
+    public int getProducerIndex()
+    {
+        return producerIndex;
+    }
+
+    public int getConsumerIndex()
+    {
+        return (int) INT.getVolatile(buf, base + CONSUMER_INDEX_OFFSET);
+    }
+
+    /**
+     * Frames published after the one in the slot the renderer claimed last, or -1 if it has not claimed one.
+     */
+    public long getConsumerLag()
+    {
+        final int consumer = getConsumerIndex();
+        if (consumer < 0 || consumer >= slots)
+            return -1;
+        final long claimed = (long) LONG.getAcquire(buf, slotOffset(consumer) + SLOT_SEQUENCE_OFFSET);
+        if (claimed == 0)
+            return -1;
+        return Math.max(0, sequence - claimed);
+    }
+
+    /**
+     * Copy the frame with stripes on the fork/join pool when it is large enough, see {@link SlotCopier}.
+     */
+    public void setParallelCopy(boolean parallel)
+    {
+        copier.setParallel(parallel);
+    }
+
+    /**
+     * Copy timings, including the per-stripe breakdown of the last parallel copy.
+     */
+    public SlotCopier getCopier()
+    {
+        return copier;
+    }
+
+    /**
+     * {@link PixelFormat} of the newest frame, as requested by the renderer.
+     */
+    public int getFormat()
+    {
+        return format;
+    }
+
+    public int getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Pixels each slot of the current frame segment can hold.
+     */
+    public int getSlotCapacity()
+    {
+        return slotCapacity;
+    }
+}
@@ -0,0 +1,199 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Change detection for published frames by hashing fixed-size tiles.
+ *
+ * Each tile gets a 64-bit hash, and a tile is dirty when its hash differs from the previous frame's. The hash is
+ * four interleaved xor-multiply lanes, so every step is a bijection: a single changed pixel always changes the hash,
+ * and larger changes collide with probability around 2^-64. Only the hashes are kept, not the previous frame.
+ *
+ * Tiles are {@link #TILE_SIZE} pixels square, doubled until the grid fits in {@link #MAX_TILES}. Large canvases
+ * are hashed one tile row per task on the common fork/join pool.
+ */
+public class FrameTiles
+{
+    public static final int TILE_SIZE = 64;
+    public static final int MAX_TILES = 4096;
+    public static final int BITMAP_LONGS = MAX_TILES / Long.SIZE;
+
+    private static final int PARALLEL_MIN_PIXELS = 1 << 20;
+    private static final long PRIME = 0x9E3779B97F4A7C15L;
+
+    private final long[] dirty = new long[BITMAP_LONGS];
+    private final IntConsumer hashRow = this::hashRow;
+    private long[] hashes = new long[0];
+    private long[] next = new long[0];
+    private int[] pixels;
+    private int width;
+    private int height;
+    private int tileSize = TILE_SIZE;
+    private int tilesX;
+    private int tilesY;
+    private int dirtyCount;
+
+    /**
+     * Hash a frame and mark the tiles that changed since the previous one.
+     *
+     * @return true if the frame size changed, in which case every tile is dirty
+     */
+    public boolean update(int[] pixels, int width, int height)
+    {
+        final boolean resized = width != this.width || height != this.height;
+        if (resized)
+            resize(width, height);
+
+        this.pixels = pixels;
+        if (width * height >= PARALLEL_MIN_PIXELS)
+            IntStream.range(0, tilesY).parallel().forEach(hashRow);
+        else
+        {
+            for (int ty = 0; ty < tilesY; ty++)
+                hashRow(ty);
+        }
+        this.pixels = null;
+
+        Arrays.fill(dirty, 0L);
+        dirtyCount = 0;
+        final int count = tileCount();
+        for (int t = 0; t < count; t++)
+        {
+            if (resized || next[t] != hashes[t])
+            {
+                dirty[t >>> 6] |= 1L << t;
+                dirtyCount++;
+            }
+        }
+        final long[] swap = hashes;
+        hashes = next;
+        next = swap;
+        return resized;
+    }
+
+    /**
+     * Forget the previous frame, so the next update marks every tile dirty.
+     */
+    public void invalidate()
+    {
+        width = 0;
+        height = 0;
+    }
+
+    private void resize(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        tileSize = TILE_SIZE;
+        while (tiles(width) * tiles(height) > MAX_TILES)
+            tileSize *= 2;
+        tilesX = tiles(width);
+        tilesY = tiles(height);
+        if (hashes.length < tileCount())
+        {
+            hashes = new long[tileCount()];
+            next = new long[tileCount()];
+        }
+    }
+
+    private int tiles(int pixels)
+    {
+        return (pixels + tileSize - 1) / tileSize;
+    }
+
+    private void hashRow(int ty)
+    {
+        final int[] px = pixels;
+        final int y0 = ty * tileSize;
+        final int y1 = Math.min(height, y0 + tileSize);
+        for (int tx = 0; tx < tilesX; tx++)
+        {
+            final int x0 = tx * tileSize;
+            final int x1 = Math.min(width, x0 + tileSize);
+            long h0 = 1;
+            long h1 = 2;
+            long h2 = 3;
+            long h3 = 4;
+            for (int y = y0; y < y1; y++)
+            {
+                int i = y * width + x0;
+                final int end = y * width + x1;
+                for (; i + 4 <= end; i += 4)
+                {
+                    h0 = (h0 ^ px[i]) * PRIME;
+                    h1 = (h1 ^ px[i + 1]) * PRIME;
+                    h2 = (h2 ^ px[i + 2]) * PRIME;
+                    h3 = (h3 ^ px[i + 3]) * PRIME;
+                }
+                for (; i < end; i++)
+                    h0 = (h0 ^ px[i]) * PRIME;
+            }
+            long h = (((h0 ^ h1) * PRIME ^ h2) * PRIME ^ h3) * PRIME;
+            next[ty * tilesX + tx] = h ^ h >>> 32;
+        }
+    }
+
+    public int tileSize()
+    {
+        return tileSize;
+    }
+
+    public int tilesX()
+    {
+        return tilesX;
+    }
+
+    public int tilesY()
+    {
+        return tilesY;
+    }
+
+    public int tileCount()
+    {
+        return tilesX * tilesY;
+    }
+
+    public int dirtyCount()
+    {
+        return dirtyCount;
+    }
+
+    /**
+     * Dirty tiles of the last update, bit {@code ty * tilesX + tx}.
+     */
+    public long[] dirty()
+    {
+        return dirty;
+    }
+
+    public static boolean isSet(long[] bitmap, int tile)
+    {
+        return (bitmap[tile >>> 6] & 1L << tile) != 0;
+    }
+
+    /**
+     * Replace {@code out} with one rectangle per run of dirty tiles in a tile row, clipped to the frame.
+     */
+    public void toRects(DirtyRects out)
+    {
+        out.clear();
+        for (int ty = 0; ty < tilesY; ty++)
+        {
+            final int y0 = ty * tileSize;
+            final int y1 = Math.min(height, y0 + tileSize);
+            for (int tx = 0; tx < tilesX; tx++)
+            {
+                if (!isSet(dirty, ty * tilesX + tx))
+                    continue;
+                final int start = tx;
+                while (tx + 1 < tilesX && isSet(dirty, ty * tilesX + tx + 1))
+                    tx++;
+                final int x0 = start * tileSize;
+                final int x1 = Math.min(width, (tx + 1) * tileSize);
+                out.add(x0, y0, x1 - x0, y1 - y0);
+            }
+        }
+    }
+}
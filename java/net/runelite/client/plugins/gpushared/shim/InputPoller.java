@@ -0,0 +1,196 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the input ring from its own thread, so input latency doesn't depend on the client's frame rate.
+ *
+ * The thread sleeps on the input signal and wakes when the shim signals, or after at most a millisecond so a shim
+ * that doesn't signal is still polled at 1 kHz. Drained events are handed to the executor in batches, one task per
+ * wakeup, normally the AWT event queue. Batches are pooled; while every batch is waiting on the executor, events stay
+ * in the ring.
+ *
+ * Within a batch, consecutive moves with the same modifiers are coalesced into the last one, so a fast mouse costs one
+ * event per wakeup. Presses and releases are never coalesced, so the moves between them (drags) keep their order.
+ */
+public class InputPoller
+{
+    public static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // batches handed to the executor and not yet run, before the ring is left to fill
+    private static final int BATCHES = 4;
+
+    private final class Batch implements Runnable, InputRing.Handler
+    {
+        final int[] type = new int[InputRing.CAPACITY];
+        final int[] x = new int[InputRing.CAPACITY];
+        final int[] y = new int[InputRing.CAPACITY];
+        final int[] button = new int[InputRing.CAPACITY];
+        final int[] modifiers = new int[InputRing.CAPACITY];
+        final long[] when = new long[InputRing.CAPACITY];
+        int count;
+        int coalesced;
+
+        @Override
+        public void onInputEvent(int type, int x, int y, int button, int modifiers, long when)
+        {
+            final int last = count - 1;
+            if (type == InputRing.MOUSE_MOVE && last >= 0 && this.type[last] == InputRing.MOUSE_MOVE
+                    && this.modifiers[last] == modifiers)
+            {
+                this.x[last] = x;
+                this.y[last] = y;
+                this.when[last] = when;
+                coalesced++;
+                return;
+            }
+            this.type[count] = type;
+            this.x[count] = x;
+            this.y[count] = y;
+            this.button[count] = button;
+            this.modifiers[count] = modifiers;
+            this.when[count] = when;
+            count++;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (int i = 0; i < count; i++)
+                    handler.onInputEvent(type[i], x[i], y[i], button[i], modifiers[i], when[i]);
+            }
+            finally
+            {
+                count = 0;
+                pool.offer(this);
+            }
+        }
+    }
+
+    private final InputRing ring;
+    private final Signal signal;
+    private final InputRing.Handler handler;
+    private final Executor executor;
+    private final ArrayBlockingQueue<Batch> pool = new ArrayBlockingQueue<>(BATCHES);
+    private volatile boolean running;
+    private Thread thread;
+
+    private volatile long events;
+    private volatile long coalesced;
+    private volatile long batches;
+    private volatile int maxBatch;
+
+    /**
+     * @param handler  receives each event, on the executor
+     * @param executor runs batches in order, e.g. {@code EventQueue::invokeLater}
+     */
+    public InputPoller(InputRing ring, Signal signal, InputRing.Handler handler, Executor executor)
+    {
+        this.ring = ring;
+        this.signal = signal;
+        this.handler = handler;
+        this.executor = executor;
+        for (int i = 0; i < BATCHES; i++)
+            pool.add(new Batch());
+    }
+
+    public void start()
+    {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(this::run, "gpushared-input");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the poller thread. Waits, without a timeout, for a drain in progress, so the caller can unmap the region
+     * once this returns. Batches already handed to the executor still run.
+     */
+    public void stop()
+    {
+        if (thread == null)
+            return;
+        running = false;
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        thread = null;
+    }
+
+    private void run()
+    {
+        int seen = signal.count();
+        boolean idle = false;
+        while (running)
+        {
+            final Batch batch = pool.poll();
+            if (batch != null)
+            {
+                batch.coalesced = 0;
+                ring.drain(batch);
+                coalesced += batch.coalesced;
+                if (batch.count > 0)
+                {
+                    events += batch.count;
+                    batches++;
+                    if (batch.count > maxBatch)
+                        maxBatch = batch.count;
+                    executor.execute(batch);
+                }
+                else
+                    pool.offer(batch);
+            }
+            // only spin while input is arriving, an idle client would otherwise spin on every poll
+            final int now = signal.await(seen, POLL_NANOS, TimeUnit.NANOSECONDS, !idle);
+            idle = now == seen;
+            seen = now;
+        }
+    }
+
+    /**
+     * Events handed to the executor.
+     */
+    public long getEvents()
+    {
+        return events;
+    }
+
+    /**
+     * Moves merged into a later move of the same batch.
+     */
+    public long getCoalesced()
+    {
+        return coalesced;
+    }
+
+    public long getBatches()
+    {
+        return batches;
+    }
+
+    /**
+     * Most events handed over in one batch.
+     */
+    public int getMaxBatch()
+    {
+        return maxBatch;
+    }
+}
@@ -0,0 +1,130 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Consumer side of the SInputRing section.
+ *
+ * A single-producer/single-consumer ring of input events written by the shim. head is only written by the
+ * shim and tail only by RuneLite, each on its own cache line. Events are delivered in the order the shim
+ * wrote them, so two clicks in one frame are both seen and press/release ordering is kept.
+ *
+ * The shim stamps each event with the wall-clock time it wrote it, in a timestamps array after the events, so
+ * handlers see when the input happened rather than when it was drained. Shims that predate the array leave it zero
+ * and the drain time is used instead. Modifier keys held at the time are in a modifiers array after that.
+ */
+public class InputRing
+{
+    public static final int CAPACITY = 256;
+
+    public static final int MOUSE_MOVE = 1;
+    public static final int MOUSE_PRESS = 2;
+    public static final int MOUSE_RELEASE = 3;
+    // x = KeyEvent VK code or 0, y = scan code, button = UTF-16 char or 0
+    public static final int KEY_PRESS = 4;
+    public static final int KEY_RELEASE = 5;
+    // button = UTF-16 char
+    public static final int KEY_TYPED = 6;
+    // button = rotation in 1/120 notches, positive towards the user
+    public static final int MOUSE_WHEEL = 7;
+    public static final int WHEEL_DELTA = 120;
+
+    // RLInputModifier
+    public static final int MOD_SHIFT = 1;
+    public static final int MOD_CTRL = 1 << 1;
+    public static final int MOD_ALT = 1 << 2;
+    public static final int MOD_META = 1 << 3;
+    public static final int MOD_ALT_GRAPH = 1 << 4;
+
+    // SInputRing
+    private static final int HEAD_OFFSET = 0;
+    private static final int TAIL_OFFSET = 64;
+    private static final int EVENTS_OFFSET = 128;
+
+    // SInputEvent
+    private static final int TYPE_OFFSET = 0;
+    private static final int X_OFFSET = 4;
+    private static final int Y_OFFSET = 8;
+    private static final int BUTTON_OFFSET = 12;
+    private static final int EVENT_SIZE = 16;
+
+    // SInputRing.timestamps_us[CAPACITY] follows the events
+    private static final int TIMESTAMPS_OFFSET = EVENTS_OFFSET + CAPACITY * EVENT_SIZE;
+
+    // SInputRing.modifiers[CAPACITY] follows the timestamps
+    private static final int MODIFIERS_OFFSET = TIMESTAMPS_OFFSET + CAPACITY * Long.BYTES;
+
+    public static final int SIZE = MODIFIERS_OFFSET + CAPACITY * Integer.BYTES;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    @FunctionalInterface
+    public interface Handler
+    {
+        /**
+         * @param modifiers {@code MOD_*} keys held
+         * @param when      milliseconds since the epoch when the shim wrote the event
+         */
+        void onInputEvent(int type, int x, int y, int button, int modifiers, long when);
+    }
+
+    private final ByteBuffer buf;
+    private final int base;
+
+    public InputRing(ByteBuffer region, int base)
+    {
+        if (region.capacity() < base + SIZE)
+            throw new IllegalArgumentException("Input section out of bounds: " + (base + SIZE) + " > " + region.capacity());
+        this.buf = region;
+        this.base = base;
+    }
+
+    /**
+     * Discard pending events by moving tail up to head.
+     */
+    public void reset()
+    {
+        LONG.setRelease(buf, base + TAIL_OFFSET, (long) LONG.getAcquire(buf, base + HEAD_OFFSET));
+    }
+
+    /**
+     * Deliver every event published since the last drain, oldest first.
+     *
+     * @return number of events delivered
+     */
+    public int drain(Handler handler)
+    {
+        final long head = (long) LONG.getAcquire(buf, base + HEAD_OFFSET);
+        long tail = (long) LONG.getOpaque(buf, base + TAIL_OFFSET);
+        if (head - tail > CAPACITY || head < tail)
+        {
+            // producer overran us or the ring was reset under us, resync
+            LONG.setRelease(buf, base + TAIL_OFFSET, head);
+            return 0;
+        }
+
+        final int count = (int) (head - tail);
+        long now = 0;
+        for (; tail != head; tail++)
+        {
+            final int index = (int) (tail & (CAPACITY - 1));
+            final int off = base + EVENTS_OFFSET + index * EVENT_SIZE;
+            final long micros = (long) LONG.get(buf, base + TIMESTAMPS_OFFSET + index * Long.BYTES);
+            if (micros == 0 && now == 0)
+                now = System.currentTimeMillis();
+            handler.onInputEvent(
+                    (int) INT.get(buf, off + TYPE_OFFSET),
+                    (int) INT.get(buf, off + X_OFFSET),
+                    (int) INT.get(buf, off + Y_OFFSET),
+                    (int) INT.get(buf, off + BUTTON_OFFSET),
+                    (int) INT.get(buf, base + MODIFIERS_OFFSET + index * Integer.BYTES),
+                    micros != 0 ? micros / 1000 : now);
+        }
+        LONG.setRelease(buf, base + TAIL_OFFSET, head);
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Windows named file mapping, opened by the rl_gpushared_shim native library. Each {@link Signal} channel
+ * has a named auto-reset event, {@code <name>.signal<channel>}, that renderers can wait on.
+ */
+public class JniTransport implements SharedMemoryTransport
+{
+    private static final class Natives
+    {
+        static
+        {
+            System.loadLibrary("rl_gpushared_shim");
+        }
+
+        static void load()
+        {
+        }
+    }
+
+    private long nativeHandle;
+
+    private native long openSharedMemory(String name, long size) throws IOException;
+    private native void closeSharedMemory(long handle);
+    private native ByteBuffer mapRegion(long handle) throws IOException;
+    private native void signalEvent(long handle, int channel);
+    private native void waitEvent(long handle, int channel, int timeoutMillis);
+
+    @Override
+    public ByteBuffer open(String name, int size) throws IOException
+    {
+        Natives.load();
+
+        nativeHandle = openSharedMemory(name, size);
+        if (nativeHandle == 0)
+            throw new IOException("Failed to open shared memory: " + name);
+
+        ByteBuffer region = mapRegion(nativeHandle);
+        if (region.capacity() != size)
+        {
+            close();
+            throw new IOException("Mapped " + region.capacity() + " bytes of shared memory, expected " + size);
+        }
+        return region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void wake(int channel)
+    {
+        if (nativeHandle != 0)
+            signalEvent(nativeHandle, channel);
+    }
+
+    @Override
+    public boolean await(int channel, long timeoutNanos)
+    {
+        if (nativeHandle == 0)
+            return false;
+        // round up so a sub-millisecond remainder still sleeps instead of spinning
+        waitEvent(nativeHandle, channel, (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(timeoutNanos + 999_999)));
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+        if (nativeHandle != 0)
+        {
+            closeSharedMemory(nativeHandle);
+            nativeHandle = 0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Maps a file with {@link FileChannel#map}, using the same layout as the native region. Needs no native library.
+ * Plain names map {@code /dev/shm/<name>}, {@code file:<path>} maps any file.
+ *
+ * The mapping itself is released when the buffer is collected, closing only releases the file.
+ */
+public class MappedFileTransport implements SharedMemoryTransport
+{
+    static final String FILE_PREFIX = "file:";
+    private static final String SHM_DIR = "/dev/shm";
+
+    private FileChannel channel;
+    private Path path;
+
+    static Path path(String name)
+    {
+        if (name.startsWith(FILE_PREFIX))
+            return Paths.get(name.substring(FILE_PREFIX.length()));
+        return Paths.get(SHM_DIR, name);
+    }
+
+    @Override
+    public ByteBuffer open(String name, int size) throws IOException
+    {
+        path = path(name);
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            // only ever grow the file, a renderer may still have the old size mapped
+            if (channel.size() < size)
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                // nothing to recover, the mapping stays valid until it is collected
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void unlink()
+    {
+        if (path != null)
+        {
+            try
+            {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException e)
+            {
+                // left behind, it is reused or overwritten by the next session
+            }
+            path = null;
+        }
+    }
+}
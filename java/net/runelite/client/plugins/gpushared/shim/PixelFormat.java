@@ -0,0 +1,99 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+/**
+ * Pixel formats a renderer can request for the frame ring, mirroring RLPixelFormat in rl_gpushared_shim.h.
+ *
+ * Formats are named by byte order in memory. RuneLite draws ARGB ints, which stored little-endian are BGRA, so
+ * {@link #BGRA} is a plain copy. The other conversions are simple per-pixel loops over int arrays. The planar YUV
+ * formats are written by {@link YuvConverter}.
+ */
+public final class PixelFormat
+{
+    public static final int BGRA = 0;
+    public static final int RGBA = 1;
+    public static final int BGRA_PREMULTIPLIED = 2;
+    public static final int RGBA_PREMULTIPLIED = 3;
+    public static final int RGB565 = 4;
+    public static final int I420 = 5;
+    public static final int NV12 = 6;
+
+    private PixelFormat()
+    {
+    }
+
+    public static boolean isValid(int format)
+    {
+        return format >= BGRA && format <= NV12;
+    }
+
+    /**
+     * Whether pixels are 32-bit with alpha, which span encoding needs.
+     */
+    public static boolean hasAlpha(int format)
+    {
+        return format >= BGRA && format <= RGBA_PREMULTIPLIED;
+    }
+
+    /**
+     * Convert ARGB pixels to a 32-bit format.
+     */
+    public static void convert(int format, int[] src, int srcOff, int[] dst, int dstOff, int length)
+    {
+        switch (format)
+        {
+            case BGRA:
+                System.arraycopy(src, srcOff, dst, dstOff, length);
+                break;
+            case RGBA:
+                for (int i = 0; i < length; i++)
+                {
+                    final int p = src[srcOff + i];
+                    dst[dstOff + i] = p & 0xFF00FF00 | (p & 0xFF) << 16 | (p >>> 16) & 0xFF;
+                }
+                break;
+            case BGRA_PREMULTIPLIED:
+                for (int i = 0; i < length; i++)
+                {
+                    final int p = src[srcOff + i];
+                    final int a = p >>> 24;
+                    dst[dstOff + i] = p & 0xFF000000
+                            | mulAlpha((p >>> 16) & 0xFF, a) << 16
+                            | mulAlpha((p >>> 8) & 0xFF, a) << 8
+                            | mulAlpha(p & 0xFF, a);
+                }
+                break;
+            case RGBA_PREMULTIPLIED:
+                for (int i = 0; i < length; i++)
+                {
+                    final int p = src[srcOff + i];
+                    final int a = p >>> 24;
+                    dst[dstOff + i] = p & 0xFF000000
+                            | mulAlpha(p & 0xFF, a) << 16
+                            | mulAlpha((p >>> 8) & 0xFF, a) << 8
+                            | mulAlpha((p >>> 16) & 0xFF, a);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Not a 32-bit pixel format: " + format);
+        }
+    }
+
+    /**
+     * Convert ARGB pixels to RGB565, dropping alpha.
+     */
+    public static void convert565(int[] src, int srcOff, short[] dst, int dstOff, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            final int p = src[srcOff + i];
+            dst[dstOff + i] = (short) ((p >>> 8) & 0xF800 | (p >>> 5) & 0x07E0 | (p >>> 3) & 0x001F);
+        }
+    }
+
+    // c * a / 255, rounded, without a division
+    private static int mulAlpha(int c, int a)
+    {
+        final int t = c * a + 128;
+        return (t + (t >>> 8)) >>> 8;
+    }
+}
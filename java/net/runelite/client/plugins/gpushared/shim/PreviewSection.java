@@ -0,0 +1,248 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Writer side of the optional RLPreviewSection: box-filtered 1/4 and 1/8 scale copies of the frame, for consumers
+ * such as dashboards that don't want to map the full frame segment.
+ *
+ * Every {@code interval} published frames, the 1/4 level is averaged from the frame and the 1/8 level from the 1/4
+ * level. Each level has two copies and a sequence; an update writes the copy the sequence does not point at, then
+ * release-stores the next sequence. A reader copies {@code copies[sequence & 1]} and retries if the sequence moved.
+ */
+public class PreviewSection
+{
+    public static final int[] SCALES = {4, 8};
+    public static final int DEFAULT_INTERVAL = 30;
+
+    // room for partial blocks on the right and bottom edges of unusually shaped frames
+    private static final int EDGE_SLACK = 4096;
+
+    // RLPreviewSection
+    private static final int LEVEL_COUNT_OFFSET = 0;
+    private static final int INTERVAL_OFFSET = 4;
+    private static final int LEVELS_OFFSET = 64;
+
+    // RLPreviewLevel
+    private static final int LEVEL_SCALE_OFFSET = 0;
+    private static final int LEVEL_CAPACITY_OFFSET = 4;
+    private static final int LEVEL_SEQUENCE_OFFSET = 8;
+    private static final int LEVEL_COPIES_OFFSET = 16;
+    private static final int LEVEL_PIXELS_OFFSET = 48;
+    private static final int LEVEL_COPY_BYTES_OFFSET = 56;
+    private static final int LEVEL_SIZE = 64;
+
+    // RLPreviewCopy
+    private static final int COPY_WIDTH_OFFSET = 0;
+    private static final int COPY_HEIGHT_OFFSET = 4;
+    private static final int COPY_FRAME_SEQUENCE_OFFSET = 8;
+    private static final int COPY_SIZE = 16;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer buf;
+    private final int base;
+    private final int[] capacity = new int[SCALES.length];
+    private final int[] pixelsOffset = new int[SCALES.length];
+    private final int[][] levels = new int[SCALES.length][];
+    private final IntBuffer[][] copies = new IntBuffer[SCALES.length][2];
+    private final long[] sequence = new long[SCALES.length];
+    // per-column sums of the destination row being built
+    private int[] sumA = new int[0];
+    private int[] sumR = new int[0];
+    private int[] sumG = new int[0];
+    private int[] sumB = new int[0];
+    private int[] sumN = new int[0];
+
+    private int interval = DEFAULT_INTERVAL;
+    private int countdown;
+
+    public PreviewSection(ByteBuffer region, int base, int maxPixels)
+    {
+        final int size = size(maxPixels);
+        if (region.capacity() < base + size)
+            throw new IllegalArgumentException("Preview section out of bounds: " + (base + size) + " > " + region.capacity());
+        this.buf = region;
+        this.base = base;
+
+        int off = LEVELS_OFFSET + SCALES.length * LEVEL_SIZE;
+        for (int i = 0; i < SCALES.length; i++)
+        {
+            capacity[i] = capacity(SCALES[i], maxPixels);
+            levels[i] = new int[capacity[i]];
+            pixelsOffset[i] = off;
+            for (int c = 0; c < 2; c++)
+            {
+                final int start = base + off + c * capacity[i] * Integer.BYTES;
+                copies[i][c] = region.duplicate()
+                        .position(start)
+                        .limit(start + capacity[i] * Integer.BYTES)
+                        .slice()
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asIntBuffer();
+            }
+            off += 2 * capacity[i] * Integer.BYTES;
+        }
+    }
+
+    private static int capacity(int scale, int maxPixels)
+    {
+        return maxPixels / (scale * scale) + EDGE_SLACK;
+    }
+
+    public static int size(int maxPixels)
+    {
+        int size = LEVELS_OFFSET + SCALES.length * LEVEL_SIZE;
+        for (int scale : SCALES)
+            size = Math.addExact(size, 2 * capacity(scale, maxPixels) * Integer.BYTES);
+        return size;
+    }
+
+    private int levelOffset(int level)
+    {
+        return base + LEVELS_OFFSET + level * LEVEL_SIZE;
+    }
+
+    /**
+     * Published frames between preview updates, 1 to update on every frame.
+     */
+    public void setInterval(int interval)
+    {
+        this.interval = Math.max(1, interval);
+        INT.set(buf, base + INTERVAL_OFFSET, this.interval);
+    }
+
+    public void reset()
+    {
+        countdown = 0;
+        INT.set(buf, base + LEVEL_COUNT_OFFSET, SCALES.length);
+        INT.set(buf, base + INTERVAL_OFFSET, interval);
+        for (int i = 0; i < SCALES.length; i++)
+        {
+            final int off = levelOffset(i);
+            sequence[i] = 0;
+            INT.set(buf, off + LEVEL_SCALE_OFFSET, SCALES[i]);
+            INT.set(buf, off + LEVEL_CAPACITY_OFFSET, capacity[i]);
+            for (int c = 0; c < 2; c++)
+            {
+                final int copy = off + LEVEL_COPIES_OFFSET + c * COPY_SIZE;
+                INT.set(buf, copy + COPY_WIDTH_OFFSET, 0);
+                INT.set(buf, copy + COPY_HEIGHT_OFFSET, 0);
+                LONG.set(buf, copy + COPY_FRAME_SEQUENCE_OFFSET, 0L);
+            }
+            LONG.set(buf, off + LEVEL_PIXELS_OFFSET, (long) pixelsOffset[i]);
+            LONG.set(buf, off + LEVEL_COPY_BYTES_OFFSET, (long) capacity[i] * Integer.BYTES);
+            LONG.setRelease(buf, off + LEVEL_SEQUENCE_OFFSET, 0L);
+        }
+    }
+
+    /**
+     * Called for every published frame; rebuilds the previews every {@code interval} frames.
+     *
+     * @return true if the previews were updated
+     */
+    public boolean update(int width, int height, int[] pixels, long frameSequence)
+    {
+        if (--countdown > 0)
+            return false;
+        countdown = interval;
+
+        int[] src = pixels;
+        int srcWidth = width;
+        int srcHeight = height;
+        int previousScale = 1;
+        for (int i = 0; i < SCALES.length; i++)
+        {
+            final int factor = SCALES[i] / previousScale;
+            final int w = (srcWidth + factor - 1) / factor;
+            final int h = (srcHeight + factor - 1) / factor;
+            if ((long) w * h > capacity[i])
+                return false;
+
+            downscale(src, srcWidth, srcHeight, factor, levels[i], w, h);
+            publish(i, w, h, frameSequence);
+
+            src = levels[i];
+            srcWidth = w;
+            srcHeight = h;
+            previousScale = SCALES[i];
+        }
+        return true;
+    }
+
+    private void publish(int level, int width, int height, long frameSequence)
+    {
+        final long next = sequence[level] + 1;
+        final int c = (int) (next & 1);
+        final IntBuffer dst = copies[level][c];
+        dst.clear();
+        dst.put(levels[level], 0, width * height);
+
+        final int copy = levelOffset(level) + LEVEL_COPIES_OFFSET + c * COPY_SIZE;
+        INT.set(buf, copy + COPY_WIDTH_OFFSET, width);
+        INT.set(buf, copy + COPY_HEIGHT_OFFSET, height);
+        LONG.set(buf, copy + COPY_FRAME_SEQUENCE_OFFSET, frameSequence);
+        LONG.setRelease(buf, levelOffset(level) + LEVEL_SEQUENCE_OFFSET, next);
+        sequence[level] = next;
+    }
+
+    /**
+     * Average each {@code factor x factor} block of ARGB pixels, including alpha. Edge blocks average the pixels they
+     * cover.
+     */
+    private void downscale(int[] src, int srcWidth, int srcHeight, int factor, int[] dst, int dstWidth, int dstHeight)
+    {
+        if (sumA.length < dstWidth)
+        {
+            sumA = new int[dstWidth];
+            sumR = new int[dstWidth];
+            sumG = new int[dstWidth];
+            sumB = new int[dstWidth];
+            sumN = new int[dstWidth];
+        }
+
+        for (int dy = 0; dy < dstHeight; dy++)
+        {
+            for (int dx = 0; dx < dstWidth; dx++)
+            {
+                sumA[dx] = 0;
+                sumR[dx] = 0;
+                sumG[dx] = 0;
+                sumB[dx] = 0;
+                sumN[dx] = 0;
+            }
+
+            final int y1 = Math.min(srcHeight, (dy + 1) * factor);
+            for (int y = dy * factor; y < y1; y++)
+            {
+                final int row = y * srcWidth;
+                for (int x = 0; x < srcWidth; x++)
+                {
+                    final int p = src[row + x];
+                    final int dx = x / factor;
+                    sumA[dx] += p >>> 24;
+                    sumR[dx] += (p >>> 16) & 0xFF;
+                    sumG[dx] += (p >>> 8) & 0xFF;
+                    sumB[dx] += p & 0xFF;
+                    sumN[dx]++;
+                }
+            }
+
+            final int row = dy * dstWidth;
+            for (int dx = 0; dx < dstWidth; dx++)
+            {
+                final int n = sumN[dx];
+                final int half = n / 2;
+                dst[row + dx] = (sumA[dx] + half) / n << 24
+                        | (sumR[dx] + half) / n << 16
+                        | (sumG[dx] + half) / n << 8
+                        | (sumB[dx] + half) / n;
+            }
+        }
+    }
+}
@@ -1,202 +1,549 @@
 package net.runelite.client.plugins.gpushared.shim;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class SharedMemoryBridge
 {
-    static {
-        System.loadLibrary("rl_gpushared_shim");
-    }
-
-    public long nativeHandle = 0;
-    public ByteBuffer cameraBuf;
-    public ByteBuffer frontBufferInfo;
-    public ByteBuffer resolutionBuffer;
-    public ByteBuffer mouseMoveBuffer;
-    public ByteBuffer mousePressBuffer;
-    public ByteBuffer mouseReleaseBuffer;
-
-    public native long openSharedMemory(String name);
-    public native void closeSharedMemory(long handle);
-    public native ByteBuffer mapCamera(long handle);
-    public native ByteBuffer mapFrameBuffer(long handle);
-    public native ByteBuffer mapResolution(long handle);
-    public native ByteBuffer mapMouseMove(long handle);
-    public native ByteBuffer mapMousePress(long handle);
-    public native ByteBuffer mapMouseRelease(long handle);
+    public static final String DEFAULT_NAME = "URRL";
 
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public SharedMemoryTransport transport;
+    public SharedMemoryRegistry registry;
+    private String name;
+    public SharedRegionLayout layout;
+    public ByteBuffer region;
+    public CameraStatus camera;
+    public CameraRing cameraRing;
+    public FrameRing frames;
+    public InputRing input;
+    public Signal frameSignal;
+    public Signal inputSignal;
+    public PreviewSection preview;
+    public volatile ZoneGeometry geometry;
+    private int resolutionOffset;
+    private int frameSignalSeen;
+    private int maxFramePixels = FrameRing.DEFAULT_MAX_PIXELS;
+    private double fullFrameThreshold = FrameRing.DEFAULT_FULL_FRAME_THRESHOLD;
+    private int frameEncoding = FrameRing.ENCODING_RAW;
+    private boolean asyncPublishing;
+    private boolean parallelCopy;
+    private boolean previews;
+    private int previewInterval = PreviewSection.DEFAULT_INTERVAL;
+    private boolean zoneGeometry;
+    private FramePublisher publisher;
+    private final Backpressure backpressure = new Backpressure();
+    private InputPoller inputPoller;
+
+    /**
+     * Map a region using the default transport for the name, see {@link SharedMemoryTransport#forName}. If another
+     * live client already registered {@code shmName}, a unique {@code <shmName>-<pid>} name is used instead.
+     *
+     * @throws IllegalStateException if every registry entry is held by a live client
+     */
     public void init(String shmName)
     {
-        nativeHandle = openSharedMemory(shmName);
-        if (nativeHandle == 0)
-            throw new RuntimeException("Failed to open shared memory: " + shmName);
-
-        cameraBuf      = mapCamera(nativeHandle).order(ByteOrder.LITTLE_ENDIAN);
-        frontBufferInfo = mapFrameBuffer(nativeHandle).order(ByteOrder.LITTLE_ENDIAN);
-        resolutionBuffer = mapResolution(nativeHandle).order(ByteOrder.LITTLE_ENDIAN);
-        mouseMoveBuffer = mapMouseMove(nativeHandle).order(ByteOrder.LITTLE_ENDIAN);
-        mousePressBuffer = mapMousePress(nativeHandle).order(ByteOrder.LITTLE_ENDIAN);
-        mouseReleaseBuffer = mapMouseRelease(nativeHandle).order(ByteOrder.LITTLE_ENDIAN);
-        setFrameBuffer(-1, -1, false, true, null);
+        openRegistry();
+        final SharedRegionLayout layout = layout();
+        String name = shmName;
+        if (registry != null)
+        {
+            name = registry.claim(shmName, layout.size());
+            if (name == null)
+                throw new IllegalStateException("Shared memory registry is full");
+        }
+        open(name, SharedMemoryTransport.forName(name), layout);
+    }
+
+    /**
+     * Map a region under exactly {@code shmName}.
+     *
+     * @throws IllegalStateException if every registry entry is held by a live client
+     */
+    public void init(String shmName, SharedMemoryTransport transport)
+    {
+        openRegistry();
+        final SharedRegionLayout layout = layout();
+        if (registry != null && !registry.register(shmName, layout.size()))
+            throw new IllegalStateException("Shared memory registry is full");
+        open(shmName, transport, layout);
+    }
+
+    private SharedRegionLayout layout()
+    {
+        final SharedRegionLayout layout = SharedRegionLayout.standard();
+        if (previews)
+            layout.add(SharedRegionLayout.SECTION_PREVIEW, PreviewSection.size(maxFramePixels));
+        if (zoneGeometry)
+            layout.add(SharedRegionLayout.SECTION_GEOMETRY, ZoneGeometry.SIZE);
+        return layout;
+    }
+
+    private void open(String shmName, SharedMemoryTransport transport, SharedRegionLayout layout)
+    {
+        try
+        {
+            region = transport.open(shmName, layout.size());
+        }
+        catch (IOException e)
+        {
+            if (registry != null)
+                registry.unregister();
+            throw new RuntimeException("Failed to open shared memory: " + shmName, e);
+        }
+        this.transport = transport;
+        this.layout = layout;
+
+        layout.writeHeader(region);
+        camera = new CameraStatus(region, layout.offset(SharedRegionLayout.SECTION_CAMERA));
+        cameraRing = new CameraRing(region, layout.offset(SharedRegionLayout.SECTION_CAMERA_RING));
+        frames = new FrameRing(region, layout.offset(SharedRegionLayout.SECTION_FRAMES), FrameRing.DEFAULT_SLOTS, shmName);
+        frames.setMaxPixels(maxFramePixels);
+        frames.setFullFrameThreshold(fullFrameThreshold);
+        frames.setEncoding(frameEncoding);
+        frames.setParallelCopy(parallelCopy);
+        input = new InputRing(region, layout.offset(SharedRegionLayout.SECTION_INPUT));
+        resolutionOffset = layout.offset(SharedRegionLayout.SECTION_RESOLUTION);
+        final int signals = layout.offset(SharedRegionLayout.SECTION_SIGNALS);
+        frameSignal = new Signal(region, signals, Signal.FRAME, transport);
+        inputSignal = new Signal(region, signals, Signal.INPUT, transport);
+        if (previews)
+        {
+            preview = new PreviewSection(region, layout.offset(SharedRegionLayout.SECTION_PREVIEW), maxFramePixels);
+            preview.setInterval(previewInterval);
+        }
+        if (zoneGeometry)
+            geometry = new ZoneGeometry(region, layout.offset(SharedRegionLayout.SECTION_GEOMETRY), shmName);
+        camera.reset();
+        cameraRing.reset();
+        frames.reset();
+        backpressure.reset();
+        input.reset();
+        if (geometry != null)
+            geometry.reset();
+        if (preview != null)
+            preview.reset();
+        frameSignalSeen = frameSignal.count();
         setResolution(-1, -1, true);
-        setMouseMove(-1, -1, true);
-        setMousePress(-1, true);
-        setMouseRelease(-1, true);
+        layout.publish(region);
+
+        name = shmName;
+        if (asyncPublishing)
+            startPublisher();
     }
 
-    public void shutdown()
+    /**
+     * Best effort, the bridge works without a registry but renderers can't discover it.
+     */
+    private void openRegistry()
     {
-        if (nativeHandle != 0)
+        if (registry != null)
+            return;
+        try
+        {
+            registry = SharedMemoryRegistry.open(SharedMemoryTransport.forName(SharedMemoryRegistry.NAME));
+        }
+        catch (IOException | RuntimeException e)
         {
-            closeSharedMemory(nativeHandle);
-            nativeHandle = 0;
+            registry = null;
         }
     }
 
-    // RuneLite -> SHIM
+    /**
+     * Name of the mapped region, which may differ from the name passed to {@link #init(String)}.
+     */
+    public String getName()
+    {
+        return name;
+    }
 
-    public void setCamera(int x, int y, int z, int yaw, int pitch, int zoom)
+    /**
+     * Largest frame, in pixels, that will be published. Frames are dropped above it.
+     */
+    public void setMaxFramePixels(int maxPixels)
     {
-        if (cameraBuf == null) return;
-        cameraBuf.clear();
-        cameraBuf.putInt(x);
-        cameraBuf.putInt(y);
-        cameraBuf.putInt(z);
-        cameraBuf.putInt(yaw);
-        cameraBuf.putInt(pitch);
-        cameraBuf.putInt(zoom);
-        cameraBuf.rewind();
-    }
-
-    public void setFrameBuffer(int width, int height, boolean ready, boolean consumed, int[] pixels) {
-        frontBufferInfo.clear();
-        frontBufferInfo.putInt(width);
-        frontBufferInfo.putInt(height);
-        frontBufferInfo.put((byte) (ready ? 1 : 0));
-        frontBufferInfo.put((byte) (consumed ? 1 : 0));
-        if (pixels != null) {
-            // 2-byte padding so next int[] is 4-byte aligned
-            frontBufferInfo.put((byte) 0);
-            frontBufferInfo.put((byte) 0);
-            IntBuffer intView = frontBufferInfo.asIntBuffer();
-            intView.put(pixels);
-        }
-        frontBufferInfo.rewind();
+        maxFramePixels = maxPixels;
+        if (frames != null)
+            frames.setMaxPixels(maxPixels);
     }
 
-    // SHIM -> RuneLite
+    /**
+     * Fraction of the tiles that may change before the frame is published as a full frame.
+     */
+    public void setFullFrameThreshold(double fraction)
+    {
+        fullFrameThreshold = fraction;
+        if (frames != null)
+            frames.setFullFrameThreshold(fraction);
+    }
 
-    public static Resolution resolution;
+    /**
+     * {@link FrameRing#ENCODING_RAW}, or {@link FrameRing#ENCODING_SPANS} to publish only the non-transparent spans
+     * of each scanline.
+     */
+    public void setFrameEncoding(int encoding)
+    {
+        if (frames != null)
+            frames.setEncoding(encoding);
+        frameEncoding = encoding;
+    }
 
-    public static class Resolution {
-        public int width;
-        public int height;
-        public boolean consumed;
+    /**
+     * Split large frame copies into row stripes on the fork/join pool, see {@link SlotCopier}.
+     */
+    public void setParallelCopy(boolean parallel)
+    {
+        parallelCopy = parallel;
+        if (frames != null)
+            frames.setParallelCopy(parallel);
+    }
 
-        public Resolution(int width, int height, boolean consumed) {
-            this.width = width;
-            this.height = height;
-            this.consumed = consumed;
-        }
+    /**
+     * Add the downscaled {@link PreviewSection} to the region. Takes effect at the next {@link #init}.
+     */
+    public void setPreviews(boolean enabled)
+    {
+        previews = enabled;
     }
 
-    public void setResolution(int width, int height, boolean consumed) {
-        resolutionBuffer.clear();
-        resolutionBuffer.putInt(width);
-        resolutionBuffer.putInt(height);
-        resolutionBuffer.put((byte) (consumed ? 1 : 0));
-        resolutionBuffer.rewind();
+    /**
+     * Add the {@link ZoneGeometry} section to the region and stream zone vertex data to it. Off by default, since
+     * every zone is read back from the GPU when it is loaded. Takes effect at the next {@link #init}.
+     */
+    public void setZoneGeometry(boolean enabled)
+    {
+        zoneGeometry = enabled;
     }
 
-    public void getResolution() {
-        resolution = new Resolution(
-                resolutionBuffer.getInt(),
-                resolutionBuffer.getInt(),
-                resolutionBuffer.get() == 1);
-        resolutionBuffer.rewind();
+    /**
+     * Published frames between preview updates.
+     */
+    public void setPreviewInterval(int frames)
+    {
+        previewInterval = frames;
+        if (preview != null)
+            preview.setInterval(frames);
     }
 
-    public static MouseMove mouseMove;
+    /**
+     * What to do with frames while the renderer lags, one of the {@link Backpressure} policies.
+     */
+    public void setBackpressurePolicy(int policy)
+    {
+        backpressure.setPolicy(policy);
+    }
 
-    public static class MouseMove {
-        public int x;
-        public int y;
-        public boolean consumed;
+    /**
+     * Frames the renderer may fall behind before the backpressure policy applies.
+     */
+    public void setMaxConsumerLag(int frames)
+    {
+        backpressure.setMaxLag(frames);
+    }
+
+    /**
+     * Consumer lag and the frames dropped or reduced because of it.
+     */
+    public Backpressure getBackpressure()
+    {
+        return backpressure;
+    }
+
+    /**
+     * Publish frames from a dedicated thread instead of the caller's, see {@link FramePublisher}.
+     * {@link #setFrameBuffer} then only snapshots the pixels.
+     */
+    public void setAsyncPublishing(boolean async)
+    {
+        asyncPublishing = async;
+        if (!async)
+            stopPublisher();
+        else if (frames != null)
+            startPublisher();
+    }
+
+    /**
+     * The async publisher, for its queue and latency metrics, or null when publishing synchronously.
+     */
+    public FramePublisher getPublisher()
+    {
+        return publisher;
+    }
 
-        public MouseMove(int x, int y, boolean consumed) {
-            this.x = x;
-            this.y = y;
-            this.consumed = consumed;
+    private void startPublisher()
+    {
+        if (publisher == null)
+        {
+            publisher = new FramePublisher(this::publishFrame);
+            publisher.start();
         }
     }
 
-    public void setMouseMove(int x, int y, boolean consumed) {
-        mouseMoveBuffer.clear();
-        mouseMoveBuffer.putInt(x);
-        mouseMoveBuffer.putInt(y);
-        mouseMoveBuffer.put((byte) (consumed ? 1 : 0));
-        mouseMoveBuffer.rewind();
+    private void stopPublisher()
+    {
+        if (publisher != null)
+        {
+            publisher.stop();
+            publisher = null;
+        }
     }
 
-    public void getMouseMove() {
-        mouseMove = new MouseMove(
-                mouseMoveBuffer.getInt(),
-                mouseMoveBuffer.getInt(),
-                mouseMoveBuffer.get() == 1);
-        mouseMoveBuffer.rewind();
+    public void shutdown()
+    {
+        // the publisher and poller threads use the sections below; stopping them waits for the work in progress
+        stopPublisher();
+        stopInputPoller();
+        if (frames != null)
+            frames.close();
+        if (geometry != null)
+            geometry.close();
+        camera = null;
+        cameraRing = null;
+        frames = null;
+        input = null;
+        preview = null;
+        geometry = null;
+        frameSignal = null;
+        inputSignal = null;
+        region = null;
+        layout = null;
+        name = null;
+        if (registry != null)
+        {
+            registry.close();
+            registry = null;
+        }
+        if (transport != null)
+        {
+            transport.close();
+            transport = null;
+        }
     }
 
-    public static MousePress mousePress;
+    // RuneLite -> SHIM
 
-    public static class MousePress {
-        public int button;
-        public boolean consumed;
+    public void setCamera(int x, int y, int z, int yaw, int pitch, int zoom)
+    {
+        if (camera == null) return;
+        camera.write(x, y, z, yaw, pitch, zoom);
+    }
+
+    /**
+     * Add a camera state with its projection to the camera ring, for renderers that extrapolate the camera.
+     */
+    public void setCameraState(CameraRing.State state)
+    {
+        if (cameraRing == null) return;
+        cameraRing.write(state);
+    }
+
+    /**
+     * Start a scene load whose zones are published to the geometry segment, see {@link ZoneGeometry}.
+     *
+     * @return the load generation, 0 if the bridge isn't initialized or doesn't stream geometry, in which case the
+     * other zone methods do nothing
+     */
+    public int beginZones()
+    {
+        final ZoneGeometry geometry = this.geometry;
+        if (geometry == null) return 0;
+        return geometry.begin();
+    }
 
-        public MousePress(int button, boolean consumed) {
-            this.button = button;
-            this.consumed = consumed;
+    /**
+     * Publish a zone's vertex data, read into shared memory by the source.
+     */
+    public boolean publishZone(int worldView, int zoneX, int zoneZ, int generation, int vertexSize,
+                               int opaqueInts, int alphaInts, ZoneGeometry.Source source)
+    {
+        final ZoneGeometry geometry = this.geometry;
+        if (geometry == null || generation == 0) return false;
+        return geometry.publish(worldView, zoneX, zoneZ, generation, vertexSize, opaqueInts, alphaInts, source);
+    }
+
+    /**
+     * Publish a zone's vertex data, {@code position()} ints of each buffer.
+     */
+    public boolean publishZone(int worldView, int zoneX, int zoneZ, int generation, int vertexSize, IntBuffer opaque, IntBuffer alpha)
+    {
+        final ZoneGeometry geometry = this.geometry;
+        if (geometry == null || generation == 0) return false;
+        return geometry.publish(worldView, zoneX, zoneZ, generation, vertexSize, opaque, alpha);
+    }
+
+    /**
+     * Republish a zone kept from the previous load at its new position.
+     */
+    public boolean copyZone(int worldView, int fromX, int fromZ, int fromGeneration, int toX, int toZ, int toGeneration)
+    {
+        final ZoneGeometry geometry = this.geometry;
+        if (geometry == null || fromGeneration == 0 || toGeneration == 0) return false;
+        return geometry.copy(worldView, fromX, fromZ, fromGeneration, toX, toZ, toGeneration);
+    }
+
+    /**
+     * Make a load's zones current for the world view once the client swaps to it.
+     */
+    public void commitZones(int worldView, int generation)
+    {
+        final ZoneGeometry geometry = this.geometry;
+        if (geometry == null || generation == 0) return;
+        geometry.commit(worldView, generation);
+    }
+
+    public void removeZones(int worldView)
+    {
+        final ZoneGeometry geometry = this.geometry;
+        if (geometry == null) return;
+        geometry.remove(worldView);
+    }
+
+    /**
+     * Publish a frame into the frame ring, or queue a copy of it when publishing asynchronously. Never blocks on
+     * the renderer.
+     *
+     * @return false if the frame was dropped, including by the backpressure policy, true if it was published,
+     * queued or identical to the previous one
+     */
+    public boolean setFrameBuffer(int width, int height, int[] pixels)
+    {
+        if (frames == null) return false;
+        if (publisher != null) return publisher.submit(width, height, pixels);
+        return publishFrame(width, height, pixels);
+    }
+
+    private boolean publishFrame(int width, int height, int[] pixels)
+    {
+        final FrameRing frames = this.frames;
+        if (frames == null) return false;
+        if (!backpressure.admit(frames.getConsumerLag()))
+            return false;
+        if (backpressure.isReducing())
+        {
+            pixels = backpressure.reduce(width, height, pixels);
+            width = backpressure.getReducedWidth();
+            height = backpressure.getReducedHeight();
         }
+        final long sequence = frames.getSequence();
+        if (!frames.publish(width, height, pixels)) return false;
+        // identical frames are skipped, there is nothing new to wake the renderer for
+        if (frames.getSequence() != sequence)
+        {
+            signalFrame();
+            // after the signal, the renderer should not wait on the downscale
+            final PreviewSection preview = this.preview;
+            if (preview != null) preview.update(width, height, pixels, frames.getSequence());
+        }
+        return true;
+    }
+
+    /**
+     * Frames passed to {@link #setFrameBuffer} that were identical to the previous one and not copied.
+     */
+    public long getSkippedFrames()
+    {
+        return frames != null ? frames.getSkippedFrames() : 0;
     }
 
-    public void setMousePress(int button, boolean consumed) {
-        mousePressBuffer.clear();
-        mousePressBuffer.putInt(button);
-        mousePressBuffer.put((byte) (consumed ? 1 : 0));
-        mousePressBuffer.rewind();
+    /**
+     * Wake consumers waiting for a frame. Called after every published frame that was not skipped.
+     */
+    public void signalFrame()
+    {
+        if (frameSignal == null) return;
+        frameSignal.signal();
     }
 
-    public void getMousePress() {
-        mousePress = new MousePress(
-                mousePressBuffer.getInt(),
-                mousePressBuffer.get() == 1);
-        mousePressBuffer.rewind();
+    /**
+     * Sleep until a frame is signalled after the previous call returned, without busy-waiting.
+     *
+     * @return false if the timeout passed first
+     */
+    public boolean awaitFrame(long timeout, TimeUnit unit)
+    {
+        if (frameSignal == null) return false;
+        final int seen = frameSignalSeen;
+        frameSignalSeen = frameSignal.await(seen, timeout, unit);
+        return frameSignalSeen != seen;
     }
 
-    public static MouseRelease mouseRelease;
+    // SHIM -> RuneLite
 
-    public static class MouseRelease {
-        public int button;
+    /**
+     * Reusable view of SResolution, refreshed in place by {@link #getResolution()}.
+     */
+    public static class Resolution
+    {
+        public int width;
+        public int height;
         public boolean consumed;
+    }
 
-        public MouseRelease(int button, boolean consumed) {
-            this.button = button;
-            this.consumed = consumed;
-        }
+    public final Resolution resolution = new Resolution();
+
+    public void setResolution(int width, int height, boolean consumed) {
+        final int off = resolutionOffset;
+        INT.set(region, off + SharedRegionLayout.RESOLUTION_WIDTH_OFFSET, width);
+        INT.set(region, off + SharedRegionLayout.RESOLUTION_HEIGHT_OFFSET, height);
+        region.put(off + SharedRegionLayout.RESOLUTION_CONSUMED_OFFSET, (byte) (consumed ? 1 : 0));
+    }
+
+    /**
+     * Read SResolution into {@link #resolution} without allocating.
+     */
+    public Resolution getResolution() {
+        if (region == null) return resolution;
+        final int off = resolutionOffset;
+        resolution.width = (int) INT.get(region, off + SharedRegionLayout.RESOLUTION_WIDTH_OFFSET);
+        resolution.height = (int) INT.get(region, off + SharedRegionLayout.RESOLUTION_HEIGHT_OFFSET);
+        resolution.consumed = region.get(off + SharedRegionLayout.RESOLUTION_CONSUMED_OFFSET) == 1;
+        return resolution;
     }
 
-    public void setMouseRelease(int button, boolean consumed) {
-        mouseReleaseBuffer.clear();
-        mouseReleaseBuffer.putInt(button);
-        mouseReleaseBuffer.put((byte) (consumed ? 1 : 0));
-        mouseReleaseBuffer.rewind();
+    /**
+     * Deliver all pending input events from the shim, in order. Does nothing while the input poller runs.
+     *
+     * @return number of events delivered
+     */
+    public int drainInput(InputRing.Handler handler)
+    {
+        if (input == null || inputPoller != null) return 0;
+        return input.drain(handler);
     }
 
-    public void getMouseRelease() {
-        mouseRelease = new MouseRelease(
-                mouseReleaseBuffer.getInt(),
-                mouseReleaseBuffer.get() == 1);
-        mouseReleaseBuffer.rewind();
+    /**
+     * Drain input from a dedicated thread as soon as the shim signals it, see {@link InputPoller}.
+     *
+     * @param executor runs batches of events on the thread that should handle them
+     */
+    public void startInputPoller(InputRing.Handler handler, Executor executor)
+    {
+        if (input == null || inputPoller != null) return;
+        inputPoller = new InputPoller(input, inputSignal, handler, executor);
+        inputPoller.start();
+    }
+
+    public void stopInputPoller()
+    {
+        if (inputPoller != null)
+        {
+            inputPoller.stop();
+            inputPoller = null;
+        }
+    }
+
+    /**
+     * The input poller, for its event and batch counts, or null when input is drained by {@link #drainInput}.
+     */
+    public InputPoller getInputPoller()
+    {
+        return inputPoller;
     }
 }
@@ -0,0 +1,282 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host-wide list of active client regions, mirroring RLRegistry in rl_gpushared_shim.h.
+ *
+ * Each bridge claims a free or stale entry by compare-and-setting its heartbeat, fills in its pid, size and name,
+ * and keeps the heartbeat fresh from a {@code gpushared-registry} thread for as long as it holds the entry, whether
+ * or not it draws. Each refresh is a compare-and-set against the last value written; if the client stalled long
+ * enough for another to claim the entry, the refresh fails and the entry is left to its new owner. A name is only
+ * reserved once the entry holding it is claimed: a client that then finds another live entry with the same name
+ * gives its entry up and tries the next name, so two clients starting together never map the same region. A renderer
+ * serving several clients maps the registry and attaches to every region whose heartbeat is fresh.
+ */
+public class SharedMemoryRegistry
+{
+    public static final String NAME = "URRL.registry";
+    public static final int MAGIC = 0x47455252; // "RREG"
+    public static final int VERSION = 1;
+    public static final int CAPACITY = 64;
+    public static final long STALE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    // RLRegistry
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int ENTRIES_OFFSET = 64;
+
+    // RLRegistryEntry
+    private static final int PID_OFFSET = 0;
+    private static final int HEARTBEAT_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int NAME_OFFSET = 24;
+    private static final int NAME_LENGTH = 104;
+    private static final int ENTRY_SIZE = 128;
+
+    public static final int SIZE = ENTRIES_OFFSET + CAPACITY * ENTRY_SIZE;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final SharedMemoryTransport transport;
+    private final ByteBuffer buf;
+    private final long pid = ProcessHandle.current().pid();
+    private final byte[] nameScratch = new byte[NAME_LENGTH];
+    private int slot = -1;
+    private Thread heartbeatThread;
+    // last heartbeat written, 0 once another client took the entry
+    private long lastHeartbeat;
+
+    private SharedMemoryRegistry(SharedMemoryTransport transport, ByteBuffer buf)
+    {
+        this.transport = transport;
+        this.buf = buf;
+    }
+
+    public static SharedMemoryRegistry open(SharedMemoryTransport transport) throws IOException
+    {
+        ByteBuffer buf = transport.open(NAME, SIZE);
+        // Every client writes the same constants, so racing initializers are harmless
+        INT.set(buf, VERSION_OFFSET, VERSION);
+        INT.set(buf, CAPACITY_OFFSET, CAPACITY);
+        INT.setRelease(buf, MAGIC_OFFSET, MAGIC);
+        return new SharedMemoryRegistry(transport, buf);
+    }
+
+    private static int entryOffset(int slot)
+    {
+        return ENTRIES_OFFSET + slot * ENTRY_SIZE;
+    }
+
+    private static boolean isFresh(long heartbeat, long now)
+    {
+        return heartbeat != 0 && now - heartbeat < STALE_MILLIS;
+    }
+
+    private boolean isLive(int slot, long now)
+    {
+        return isFresh((long) LONG.getAcquire(buf, entryOffset(slot) + HEARTBEAT_OFFSET), now);
+    }
+
+    private boolean nameEquals(int slot, byte[] name)
+    {
+        final int off = entryOffset(slot) + NAME_OFFSET;
+        for (int i = 0; i < name.length; i++)
+        {
+            if (buf.get(off + i) != name[i])
+                return false;
+        }
+        return buf.get(off + name.length) == 0;
+    }
+
+    private static byte[] encode(String name)
+    {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NAME_LENGTH)
+            throw new IllegalArgumentException("Region name too long: " + name);
+        return bytes;
+    }
+
+    /**
+     * Whether another live client (or another bridge in this JVM) has registered the name.
+     */
+    public boolean isActive(String name)
+    {
+        final byte[] bytes = encode(name);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < CAPACITY; i++)
+        {
+            if (i != slot && isLive(i, now) && nameEquals(i, bytes))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Claim an entry under the first of {@code base}, {@code base-<pid>}, {@code base-<pid>-2}, ... that no other
+     * live client holds.
+     *
+     * @return the reserved name, or null if every entry is held by a live client
+     */
+    public String claim(String base, long size)
+    {
+        String name = base;
+        for (int n = 1; ; n++)
+        {
+            if (!isActive(name))
+            {
+                if (!register(name, size))
+                    return null;
+                // another client may have claimed the same name in the meantime; both see each other and move on
+                VarHandle.fullFence();
+                if (!isActive(name))
+                    return name;
+                unregister();
+            }
+            name = n == 1 ? base + "-" + pid : base + "-" + pid + "-" + n;
+        }
+    }
+
+    /**
+     * Claim an entry for a region under exactly this name.
+     *
+     * @return false if every entry is held by a live client
+     * @throws IllegalStateException if this registry already holds an entry
+     */
+    public boolean register(String name, long size)
+    {
+        if (slot >= 0)
+            throw new IllegalStateException("Registry entry already held, unregister first");
+        final byte[] bytes = encode(name);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < CAPACITY; i++)
+        {
+            final int off = entryOffset(i);
+            final long heartbeat = (long) LONG.getVolatile(buf, off + HEARTBEAT_OFFSET);
+            if (isFresh(heartbeat, now))
+                continue;
+            // a fresh heartbeat is the claim, so two clients can never take the same entry
+            if (!LONG.compareAndSet(buf, off + HEARTBEAT_OFFSET, heartbeat, now))
+                continue;
+
+            // the stale owner's pid must not be paired with the new name
+            LONG.setRelease(buf, off + PID_OFFSET, 0L);
+            LONG.set(buf, off + SIZE_OFFSET, size);
+            for (int j = 0; j < NAME_LENGTH; j++)
+                buf.put(off + NAME_OFFSET + j, j < bytes.length ? bytes[j] : 0);
+            LONG.setRelease(buf, off + PID_OFFSET, pid);
+            slot = i;
+            lastHeartbeat = now;
+            startHeartbeat(off);
+            return true;
+        }
+        return false;
+    }
+
+    private void startHeartbeat(int off)
+    {
+        final Thread thread = new Thread(() ->
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                try
+                {
+                    Thread.sleep(HEARTBEAT_MILLIS);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                final long now = System.currentTimeMillis();
+                if (!LONG.compareAndSet(buf, off + HEARTBEAT_OFFSET, lastHeartbeat, now))
+                {
+                    // stalled past STALE_MILLIS and another client claimed the entry
+                    lastHeartbeat = 0;
+                    return;
+                }
+                lastHeartbeat = now;
+            }
+        }, "gpushared-registry");
+        thread.setDaemon(true);
+        thread.start();
+        heartbeatThread = thread;
+    }
+
+    /**
+     * Stop refreshing the heartbeat, waiting for the thread so it can't revive a released entry or touch an unmapped
+     * registry.
+     */
+    private void stopHeartbeat()
+    {
+        if (heartbeatThread == null)
+            return;
+        heartbeatThread.interrupt();
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                heartbeatThread.join();
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        heartbeatThread = null;
+    }
+
+    public void unregister()
+    {
+        stopHeartbeat();
+        if (slot >= 0)
+        {
+            final int off = entryOffset(slot);
+            // refreshing first keeps the entry ours while it is cleared, and leaves it alone if it was taken
+            if (lastHeartbeat != 0
+                    && LONG.compareAndSet(buf, off + HEARTBEAT_OFFSET, lastHeartbeat, System.currentTimeMillis()))
+            {
+                LONG.setRelease(buf, off + PID_OFFSET, 0L);
+                buf.put(off + NAME_OFFSET, (byte) 0);
+                LONG.setRelease(buf, off + HEARTBEAT_OFFSET, 0L);
+            }
+            lastHeartbeat = 0;
+            slot = -1;
+        }
+    }
+
+    /**
+     * Name of a live entry, or null if the entry is free or stale. Allocates, intended for tooling.
+     */
+    public String entryName(int slot)
+    {
+        if (!isLive(slot, System.currentTimeMillis()))
+            return null;
+        final int off = entryOffset(slot) + NAME_OFFSET;
+        int len = 0;
+        while (len < NAME_LENGTH && buf.get(off + len) != 0)
+        {
+            nameScratch[len] = buf.get(off + len);
+            len++;
+        }
+        return new String(nameScratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    public void close()
+    {
+        unregister();
+        transport.close();
+    }
+}
@@ -0,0 +1,58 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Maps the shared region into the JVM.
+ */
+public interface SharedMemoryTransport
+{
+    /**
+     * Open or create the region and map {@code size} bytes of it, in little-endian order.
+     */
+    ByteBuffer open(String name, int size) throws IOException;
+
+    void close();
+
+    /**
+     * Remove the region's name after {@link #close}, so it is freed once no one has it mapped.
+     */
+    default void unlink()
+    {
+    }
+
+    /**
+     * Wake anything sleeping on a {@link Signal} channel through a native event, if the transport has one.
+     */
+    default void wake(int channel)
+    {
+    }
+
+    /**
+     * Sleep on a {@link Signal} channel's native event.
+     *
+     * @return false if the transport has no native event and the caller must park instead
+     */
+    default boolean await(int channel, long timeoutNanos)
+    {
+        return false;
+    }
+
+    /**
+     * Pick the transport for a region name. {@code file:<path>} maps that file, otherwise Windows uses a named
+     * file mapping through the native library and every other OS maps {@code /dev/shm/<name>}.
+     */
+    static SharedMemoryTransport forName(String name)
+    {
+        if (name.startsWith(MappedFileTransport.FILE_PREFIX))
+        {
+            return new MappedFileTransport();
+        }
+        if (System.getProperty("os.name", "").startsWith("Windows"))
+        {
+            return new JniTransport();
+        }
+        return new MappedFileTransport();
+    }
+}
@@ -0,0 +1,147 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Self-describing layout of the shared region, mirroring RLRegionHeader in rl_gpushared_shim.h.
+ *
+ * The region starts with a header holding the magic, protocol version, total size and a table of
+ * (section id, offset, length, alignment). Sections are placed in the order they are added, each on its own
+ * 64-byte boundary so the camera, frame and input sections never share a cache line. Readers find sections by id
+ * and skip ids they do not know.
+ */
+public final class SharedRegionLayout
+{
+    public static final int MAGIC = 0x4C525255; // "URRL"
+    public static final int VERSION_MAJOR = 2;
+    public static final int VERSION_MINOR = 12;
+    public static final int SECTION_ALIGNMENT = 64;
+    public static final int MAX_SECTIONS = 16;
+
+    public static final int SECTION_CAMERA = 1;
+    public static final int SECTION_FRAMES = 2;
+    public static final int SECTION_INPUT = 3;
+    public static final int SECTION_RESOLUTION = 4;
+    public static final int SECTION_SIGNALS = 5;
+    public static final int SECTION_PREVIEW = 6;
+    public static final int SECTION_CAMERA_RING = 7;
+    public static final int SECTION_GEOMETRY = 8;
+
+    // RLRegionHeader
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_MAJOR_OFFSET = 4;
+    private static final int VERSION_MINOR_OFFSET = 6;
+    private static final int HEADER_SIZE_OFFSET = 8;
+    private static final int SECTION_COUNT_OFFSET = 12;
+    private static final int TOTAL_SIZE_OFFSET = 16;
+    private static final int SECTIONS_OFFSET = 64;
+
+    // RLSectionEntry
+    private static final int ENTRY_ID_OFFSET = 0;
+    private static final int ENTRY_ALIGNMENT_OFFSET = 4;
+    private static final int ENTRY_OFFSET_OFFSET = 8;
+    private static final int ENTRY_LENGTH_OFFSET = 16;
+    private static final int ENTRY_SIZE = 24;
+
+    public static final int HEADER_SIZE = SECTIONS_OFFSET + MAX_SECTIONS * ENTRY_SIZE;
+
+    // SResolution
+    public static final int RESOLUTION_WIDTH_OFFSET = 0;
+    public static final int RESOLUTION_HEIGHT_OFFSET = 4;
+    public static final int RESOLUTION_CONSUMED_OFFSET = 8;
+    public static final int RESOLUTION_SIZE = 9;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int[] ids = new int[MAX_SECTIONS];
+    private final int[] offsets = new int[MAX_SECTIONS];
+    private final int[] lengths = new int[MAX_SECTIONS];
+    private int count;
+    private int size = align(HEADER_SIZE);
+
+    /**
+     * The sections RuneLite publishes today.
+     */
+    public static SharedRegionLayout standard()
+    {
+        return new SharedRegionLayout()
+                .add(SECTION_CAMERA, CameraStatus.SIZE)
+                .add(SECTION_FRAMES, FrameRing.size(FrameRing.DEFAULT_SLOTS))
+                .add(SECTION_INPUT, InputRing.SIZE)
+                .add(SECTION_RESOLUTION, RESOLUTION_SIZE)
+                .add(SECTION_SIGNALS, Signal.SIZE)
+                .add(SECTION_CAMERA_RING, CameraRing.SIZE);
+    }
+
+    private static int align(int offset)
+    {
+        return (offset + SECTION_ALIGNMENT - 1) & -SECTION_ALIGNMENT;
+    }
+
+    public SharedRegionLayout add(int id, int length)
+    {
+        if (count == MAX_SECTIONS)
+            throw new IllegalStateException("Too many sections");
+        for (int i = 0; i < count; i++)
+        {
+            if (ids[i] == id)
+                throw new IllegalArgumentException("Duplicate section " + id);
+        }
+
+        ids[count] = id;
+        offsets[count] = size;
+        lengths[count] = length;
+        count++;
+        size = Math.toIntExact(align(Math.addExact(size, length)));
+        return this;
+    }
+
+    public int offset(int id)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (ids[i] == id)
+                return offsets[i];
+        }
+        throw new IllegalArgumentException("No section " + id);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Mark the region as uninitialized and write the section table. Readers ignore the region until
+     * {@link #publish} is called.
+     */
+    public void writeHeader(ByteBuffer region)
+    {
+        INT.setVolatile(region, MAGIC_OFFSET, 0);
+        region.putShort(VERSION_MAJOR_OFFSET, (short) VERSION_MAJOR);
+        region.putShort(VERSION_MINOR_OFFSET, (short) VERSION_MINOR);
+        INT.set(region, HEADER_SIZE_OFFSET, HEADER_SIZE);
+        INT.set(region, SECTION_COUNT_OFFSET, count);
+        LONG.set(region, TOTAL_SIZE_OFFSET, (long) size);
+        for (int i = 0; i < MAX_SECTIONS; i++)
+        {
+            final int off = SECTIONS_OFFSET + i * ENTRY_SIZE;
+            INT.set(region, off + ENTRY_ID_OFFSET, i < count ? ids[i] : 0);
+            INT.set(region, off + ENTRY_ALIGNMENT_OFFSET, i < count ? SECTION_ALIGNMENT : 0);
+            LONG.set(region, off + ENTRY_OFFSET_OFFSET, i < count ? (long) offsets[i] : 0L);
+            LONG.set(region, off + ENTRY_LENGTH_OFFSET, i < count ? (long) lengths[i] : 0L);
+        }
+    }
+
+    /**
+     * Make the region visible to readers, after every section has been initialized.
+     */
+    public void publish(ByteBuffer region)
+    {
+        INT.setRelease(region, MAGIC_OFFSET, MAGIC);
+    }
+}
@@ -0,0 +1,116 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One RLSignal channel in the RLSignals section.
+ *
+ * The signaller bumps a 32-bit counter and only asks the transport to wake sleepers if the waiter count is
+ * non-zero. A waiter spins briefly on the counter, then registers itself as a waiter and sleeps on the
+ * transport's native event. Transports without one fall back to parking with an exponential backoff, which
+ * bounds both the wakeup latency and the cost of an idle waiter.
+ */
+public class Signal
+{
+    public static final int FRAME = 0;
+    public static final int INPUT = 1;
+    public static final int CHANNELS = 2;
+
+    // RLSignal
+    private static final int COUNTER_OFFSET = 0;
+    private static final int WAITERS_OFFSET = 4;
+    private static final int CHANNEL_SIZE = 64;
+
+    public static final int SIZE = CHANNELS * CHANNEL_SIZE;
+
+    private static final int SPINS = 1000;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer buf;
+    private final int off;
+    private final int channel;
+    private final SharedMemoryTransport transport;
+
+    public Signal(ByteBuffer region, int base, int channel, SharedMemoryTransport transport)
+    {
+        if (channel < 0 || channel >= CHANNELS)
+            throw new IllegalArgumentException("No signal channel " + channel);
+        if (region.capacity() < base + SIZE)
+            throw new IllegalArgumentException("Signal section out of bounds: " + (base + SIZE) + " > " + region.capacity());
+        this.buf = region;
+        this.off = base + channel * CHANNEL_SIZE;
+        this.channel = channel;
+        this.transport = transport;
+    }
+
+    public int count()
+    {
+        return (int) INT.getAcquire(buf, off + COUNTER_OFFSET);
+    }
+
+    public void signal()
+    {
+        INT.getAndAdd(buf, off + COUNTER_OFFSET, 1);
+        // Pairs with the waiter's increment of waiters followed by a re-read of the counter
+        if ((int) INT.getVolatile(buf, off + WAITERS_OFFSET) > 0)
+            transport.wake(channel);
+    }
+
+    /**
+     * Wait until the counter differs from {@code seen}, or until the timeout passes.
+     *
+     * @return the counter when the wait ended, equal to {@code seen} on timeout
+     */
+    public int await(int seen, long timeout, TimeUnit unit)
+    {
+        return await(seen, timeout, unit, true);
+    }
+
+    /**
+     * Wait as {@link #await(int, long, TimeUnit)}, optionally skipping the spin phase. Without it the fallback
+     * parks at the longest interval straight away, so waiters that loop on a short timeout skip both while idle
+     * rather than restarting the spin and backoff on every timeout.
+     */
+    public int await(int seen, long timeout, TimeUnit unit, boolean spin)
+    {
+        for (int i = 0; spin && i < SPINS; i++)
+        {
+            final int now = count();
+            if (now != seen)
+                return now;
+            Thread.onSpinWait();
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long park = spin ? MIN_PARK_NANOS : MAX_PARK_NANOS;
+        INT.getAndAdd(buf, off + WAITERS_OFFSET, 1);
+        try
+        {
+            while (true)
+            {
+                final int now = (int) INT.getVolatile(buf, off + COUNTER_OFFSET);
+                final long remaining = deadline - System.nanoTime();
+                if (now != seen || remaining <= 0)
+                    return now;
+
+                if (!transport.await(channel, remaining))
+                {
+                    LockSupport.parkNanos(Math.min(park, remaining));
+                    park = Math.min(park * 2, MAX_PARK_NANOS);
+                }
+            }
+        }
+        finally
+        {
+            INT.getAndAdd(buf, off + WAITERS_OFFSET, -1);
+        }
+    }
+}
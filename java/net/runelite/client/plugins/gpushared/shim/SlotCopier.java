@@ -0,0 +1,316 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Copies frames into frame ring slots, converting to the slot's {@link PixelFormat}.
+ *
+ * In parallel mode a large copy is split into stripes of tile rows, one task per stripe on the common fork/join
+ * pool, each with its own buffer views and scratch. Whether a copy is large enough is adaptive: serial copies are
+ * timed now and then, and the threshold doubles when a parallel copy loses to the serial estimate and halves when it
+ * clearly wins, and drifts back towards the default at each serial timing. The last parallel copy's per-stripe times
+ * are kept for tuning.
+ */
+public class SlotCopier
+{
+    public static final int MAX_STRIPES = 8;
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 1 << 20;
+
+    // pixels converted per bulk put when the slot format is not BGRA
+    private static final int CONVERT_CHUNK = 4096;
+    // copies smaller than this are never timed or split
+    private static final long MIN_PARALLEL_PIXELS = 1 << 16;
+    private static final long MAX_PARALLEL_THRESHOLD = 1L << 26;
+    // large copies between serial timings, so the serial estimate follows the machine's load
+    private static final int CALIBRATE_INTERVAL = 120;
+
+    private static final class Writer
+    {
+        final ByteBuffer bytes;
+        final IntBuffer ints;
+        final ShortBuffer shorts;
+        final int[] intScratch;
+        final short[] shortScratch;
+
+        Writer(ByteBuffer slot, int[] intScratch, short[] shortScratch)
+        {
+            this.bytes = slot;
+            this.ints = slot.asIntBuffer();
+            this.shorts = slot.asShortBuffer();
+            this.intScratch = intScratch;
+            this.shortScratch = shortScratch;
+        }
+
+        void write(int format, int index, int[] pixels, int offset, int length)
+        {
+            if (format == PixelFormat.BGRA)
+            {
+                ints.position(index);
+                ints.put(pixels, offset, length);
+                return;
+            }
+
+            for (int done = 0; done < length; done += CONVERT_CHUNK)
+            {
+                final int n = Math.min(CONVERT_CHUNK, length - done);
+                if (format == PixelFormat.RGB565)
+                {
+                    PixelFormat.convert565(pixels, offset + done, shortScratch, 0, n);
+                    shorts.position(index + done);
+                    shorts.put(shortScratch, 0, n);
+                }
+                else
+                {
+                    PixelFormat.convert(format, pixels, offset + done, intScratch, 0, n);
+                    ints.position(index + done);
+                    ints.put(intScratch, 0, n);
+                }
+            }
+        }
+    }
+
+    private final int stripes = Math.max(1, Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()));
+    private final Writer[][] writers; // [slot][stripe]
+    private final int[][] intScratch = new int[stripes][CONVERT_CHUNK];
+    private final short[][] shortScratch = new short[stripes][CONVERT_CHUNK];
+    private final byte[][] byteScratch = new byte[stripes][0];
+    private final long[] stripeNanos = new long[stripes];
+    private final IntConsumer copyStripe = this::copyStripe;
+
+    private volatile boolean parallel; // set by the client thread
+    private int yuvMatrix = YuvConverter.BT601;
+    private int yuvRange = YuvConverter.LIMITED;
+    private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private double serialNanosPerPixel; // 0 until the first timed serial copy
+    private int calibrateIn;
+    private long lastCopyNanos;
+    private boolean lastCopyParallel;
+    private int lastStripes;
+
+    // the copy the stripes are working on
+    private Writer[] copyWriters;
+    private int copyFormat;
+    private long[] copyBitmap;
+    private FrameTiles copyTiles;
+    private int copyWidth;
+    private int copyHeight;
+    private int[] copyPixels;
+    private int copyStripes;
+
+    public SlotCopier(int slots)
+    {
+        this.writers = new Writer[slots][stripes];
+    }
+
+    /**
+     * Point a slot at new storage, after the frame segment is remapped.
+     */
+    public void map(int slot, ByteBuffer storage)
+    {
+        for (int s = 0; s < stripes; s++)
+            writers[slot][s] = new Writer(storage.duplicate().order(storage.order()), intScratch[s], shortScratch[s]);
+    }
+
+    public void setParallel(boolean parallel)
+    {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Colour space for the YUV formats, see {@link YuvConverter}.
+     */
+    public void setYuv(int matrix, int range)
+    {
+        this.yuvMatrix = matrix;
+        this.yuvRange = range;
+    }
+
+    /**
+     * Store pixels at a pixel index of a slot, converted to {@code format}. Always on the calling thread.
+     */
+    public void write(int slot, int format, int index, int[] pixels, int offset, int length)
+    {
+        writers[slot][0].write(format, index, pixels, offset, length);
+    }
+
+    /**
+     * Copy a whole frame, or only the tiles marked in {@code bitmap}, into a slot.
+     *
+     * @param bitmap tiles to copy, or null for the whole frame
+     */
+    public void copy(int slot, int format, long[] bitmap, FrameTiles tiles, int width, int height, int[] pixels)
+    {
+        long work = (long) width * height;
+        if (bitmap != null)
+        {
+            long dirty = 0;
+            for (long word : bitmap)
+                dirty += Long.bitCount(word);
+            work = Math.min(work, dirty * tiles.tileSize() * tiles.tileSize());
+        }
+
+        copyWriters = writers[slot];
+        copyFormat = format;
+        copyBitmap = bitmap;
+        copyTiles = tiles;
+        copyWidth = width;
+        copyHeight = height;
+        copyPixels = pixels;
+        try
+        {
+            if (work < MIN_PARALLEL_PIXELS || !parallel || stripes == 1 || tiles.tilesY() < 2)
+            {
+                copyStripes = 1;
+                copyStripe(0);
+            }
+            else if (serialNanosPerPixel == 0 || --calibrateIn <= 0)
+                copySerialTimed(work);
+            else if (work < parallelThreshold)
+            {
+                copyStripes = 1;
+                copyStripe(0);
+            }
+            else
+                copyParallelTimed(work);
+        }
+        finally
+        {
+            copyPixels = null;
+            copyBitmap = null;
+        }
+    }
+
+    private void copySerialTimed(long work)
+    {
+        copyStripes = 1;
+        final long start = System.nanoTime();
+        copyStripe(0);
+        final long nanos = System.nanoTime() - start;
+        final double perPixel = (double) nanos / work;
+        serialNanosPerPixel = serialNanosPerPixel == 0 ? perPixel : serialNanosPerPixel * 0.75 + perPixel * 0.25;
+        calibrateIn = CALIBRATE_INTERVAL;
+        // drift back towards the default so a threshold raised under load is probed again
+        if (parallelThreshold > DEFAULT_PARALLEL_THRESHOLD)
+            parallelThreshold /= 2;
+        lastCopyNanos = nanos;
+        lastCopyParallel = false;
+    }
+
+    private void copyParallelTimed(long work)
+    {
+        copyStripes = Math.min(stripes, copyTiles.tilesY());
+        final long start = System.nanoTime();
+        IntStream.range(0, copyStripes).parallel().forEach(copyStripe);
+        final long nanos = System.nanoTime() - start;
+        final double serialEstimate = serialNanosPerPixel * work;
+        if (nanos > serialEstimate)
+            parallelThreshold = Math.min(parallelThreshold * 2, MAX_PARALLEL_THRESHOLD);
+        else if (nanos < serialEstimate * 0.75)
+            parallelThreshold = Math.max(parallelThreshold / 2, MIN_PARALLEL_PIXELS);
+        lastCopyNanos = nanos;
+        lastCopyParallel = true;
+        lastStripes = copyStripes;
+    }
+
+    /**
+     * Copy one stripe of tile rows.
+     */
+    private void copyStripe(int stripe)
+    {
+        final long start = System.nanoTime();
+        final FrameTiles tiles = copyTiles;
+        final int tilesY = tiles.tilesY();
+        final int ty0 = (int) ((long) tilesY * stripe / copyStripes);
+        final int ty1 = (int) ((long) tilesY * (stripe + 1) / copyStripes);
+        final Writer writer = copyWriters[stripe];
+        final int size = tiles.tileSize();
+        final int width = copyWidth;
+        final int[] pixels = copyPixels;
+        final boolean yuv = YuvConverter.isYuv(copyFormat);
+        if (yuv && byteScratch[stripe].length < width + 1)
+            byteScratch[stripe] = new byte[width + 1];
+
+        if (copyBitmap == null)
+        {
+            final int y0 = ty0 * size;
+            final int y1 = Math.min(copyHeight, ty1 * size);
+            if (yuv)
+                YuvConverter.convert(copyFormat, yuvMatrix, yuvRange, pixels, width, copyHeight, 0, y0, width, y1,
+                        writer.bytes, byteScratch[stripe]);
+            else
+                writer.write(copyFormat, y0 * width, pixels, y0 * width, (y1 - y0) * width);
+        }
+        else
+        {
+            final int tilesX = tiles.tilesX();
+            for (int ty = ty0; ty < ty1; ty++)
+            {
+                final int y0 = ty * size;
+                final int y1 = Math.min(copyHeight, y0 + size);
+                for (int tx = 0; tx < tilesX; tx++)
+                {
+                    if (!FrameTiles.isSet(copyBitmap, ty * tilesX + tx))
+                        continue;
+                    // a run of adjacent tiles at a time
+                    final int first = tx;
+                    while (tx + 1 < tilesX && FrameTiles.isSet(copyBitmap, ty * tilesX + tx + 1))
+                        tx++;
+                    final int x0 = first * size;
+                    final int x1 = Math.min(width, (tx + 1) * size);
+                    if (yuv)
+                    {
+                        YuvConverter.convert(copyFormat, yuvMatrix, yuvRange, pixels, width, copyHeight, x0, y0, x1, y1,
+                                writer.bytes, byteScratch[stripe]);
+                        continue;
+                    }
+                    for (int y = y0; y < y1; y++)
+                        writer.write(copyFormat, y * width + x0, pixels, y * width + x0, x1 - x0);
+                }
+            }
+        }
+        if (copyStripes > 1)
+            stripeNanos[stripe] = System.nanoTime() - start;
+    }
+
+    public int getStripes()
+    {
+        return stripes;
+    }
+
+    /**
+     * Pixels a copy must reach before it is split into stripes.
+     */
+    public long getParallelThreshold()
+    {
+        return parallelThreshold;
+    }
+
+    /**
+     * Duration of the last timed copy, serial or parallel.
+     */
+    public long getLastCopyNanos()
+    {
+        return lastCopyNanos;
+    }
+
+    public boolean isLastCopyParallel()
+    {
+        return lastCopyParallel;
+    }
+
+    /**
+     * Per-stripe durations of the last parallel copy, into {@code out}.
+     *
+     * @return the number of stripes it used
+     */
+    public int getStripeNanos(long[] out)
+    {
+        final int n = Math.min(lastStripes, out.length);
+        System.arraycopy(stripeNanos, 0, out, 0, n);
+        return n;
+    }
+}
@@ -0,0 +1,135 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ARGB to planar YUV 4:2:0 ({@link PixelFormat#I420}, {@link PixelFormat#NV12}) for consumers that encode video.
+ *
+ * The slot holds the Y plane ({@code width * height} bytes) followed by the chroma for each 2x2 block: U then V planes
+ * for I420, one interleaved UV plane for NV12. Odd edges repeat the last row or column. Matrix and range are chosen by
+ * the consumer; coefficients are 8-bit fixed point, with each chroma row summing to zero so grey stays neutral.
+ */
+public final class YuvConverter
+{
+    public static final int BT601 = 0;
+    public static final int BT709 = 1;
+
+    public static final int LIMITED = 0;
+    public static final int FULL = 1;
+
+    // Y (r, g, b), U (r, g, b), V (r, g, b), Y offset; indexed by matrix * 2 + range
+    private static final int[][] COEFFICIENTS = {
+            {66, 129, 25, -38, -74, 112, 112, -94, -18, 16},
+            {77, 150, 29, -43, -85, 128, 128, -107, -21, 0},
+            {47, 157, 16, -26, -86, 112, 112, -102, -10, 16},
+            {54, 183, 19, -29, -99, 128, 128, -116, -12, 0},
+    };
+
+    private YuvConverter()
+    {
+    }
+
+    /**
+     * Full range chroma coefficients are 128, so saturated blue (U) and red (V) round to 256.
+     */
+    private static int clamp(int value)
+    {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    public static boolean isValid(int matrix, int range)
+    {
+        return (matrix == BT601 || matrix == BT709) && (range == LIMITED || range == FULL);
+    }
+
+    public static boolean isYuv(int format)
+    {
+        return format == PixelFormat.I420 || format == PixelFormat.NV12;
+    }
+
+    /**
+     * Bytes of one frame, luma and chroma.
+     */
+    public static long frameBytes(int width, int height)
+    {
+        return (long) width * height + 2L * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Convert the pixels in [x0, x1) x [y0, y1) of a frame. x0 and y0 must be even.
+     *
+     * @param scratch at least {@code x1 - x0 + 1} bytes
+     */
+    public static void convert(int format, int matrix, int range, int[] pixels, int width, int height,
+                               int x0, int y0, int x1, int y1, ByteBuffer dst, byte[] scratch)
+    {
+        final int[] c = COEFFICIENTS[matrix * 2 + range];
+        final int yr = c[0], yg = c[1], yb = c[2];
+        final int ur = c[3], ug = c[4], ub = c[5];
+        final int vr = c[6], vg = c[7], vb = c[8];
+        final int yOffset = c[9];
+
+        final int chromaWidth = (width + 1) / 2;
+        final int chromaPlane = chromaWidth * ((height + 1) / 2);
+        final int lumaPlane = width * height;
+        final int cx0 = x0 / 2;
+        final int cx1 = (x1 + 1) / 2;
+
+        for (int y = y0; y < y1; y++)
+        {
+            final int row = y * width;
+            for (int x = x0; x < x1; x++)
+            {
+                final int p = pixels[row + x];
+                final int r = (p >>> 16) & 0xFF, g = (p >>> 8) & 0xFF, b = p & 0xFF;
+                scratch[x - x0] = (byte) clamp(((yr * r + yg * g + yb * b + 128) >> 8) + yOffset);
+            }
+            dst.position(row + x0);
+            dst.put(scratch, 0, x1 - x0);
+
+            if ((y & 1) != 0)
+                continue;
+
+            // chroma from the 2x2 block starting on this row
+            final int below = Math.min(y + 1, height - 1) * width;
+            for (int cx = cx0; cx < cx1; cx++)
+            {
+                final int left = cx * 2;
+                final int right = Math.min(left + 1, width - 1);
+                final int p0 = pixels[row + left], p1 = pixels[row + right];
+                final int p2 = pixels[below + left], p3 = pixels[below + right];
+                final int r = (((p0 >>> 16) & 0xFF) + ((p1 >>> 16) & 0xFF) + ((p2 >>> 16) & 0xFF) + ((p3 >>> 16) & 0xFF) + 2) >> 2;
+                final int g = (((p0 >>> 8) & 0xFF) + ((p1 >>> 8) & 0xFF) + ((p2 >>> 8) & 0xFF) + ((p3 >>> 8) & 0xFF) + 2) >> 2;
+                final int b = ((p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF) + 2) >> 2;
+                final byte u = (byte) clamp(((ur * r + ug * g + ub * b + 128) >> 8) + 128);
+                final byte v = (byte) clamp(((vr * r + vg * g + vb * b + 128) >> 8) + 128);
+                if (format == PixelFormat.NV12)
+                {
+                    scratch[(cx - cx0) * 2] = u;
+                    scratch[(cx - cx0) * 2 + 1] = v;
+                }
+                else
+                {
+                    scratch[cx - cx0] = u;
+                    // V is written after U, from the upper half of the scratch
+                    scratch[(cx1 - cx0) + cx - cx0] = v;
+                }
+            }
+
+            final int chromaRow = (y / 2) * chromaWidth;
+            final int n = cx1 - cx0;
+            if (format == PixelFormat.NV12)
+            {
+                dst.position(lumaPlane + (chromaRow + cx0) * 2);
+                dst.put(scratch, 0, n * 2);
+            }
+            else
+            {
+                dst.position(lumaPlane + chromaRow + cx0);
+                dst.put(scratch, 0, n);
+                dst.position(lumaPlane + chromaPlane + chromaRow + cx0);
+                dst.put(scratch, n, n);
+            }
+        }
+    }
+}
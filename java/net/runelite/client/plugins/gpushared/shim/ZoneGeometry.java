@@ -0,0 +1,470 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writer side of the RLGeometrySection section: the static vertex data of each scene zone, so a renderer can mirror
+ * the scene without re-deriving it from the client.
+ *
+ * Zones are appended as records to a geometry segment named {@code <region>.geometry.<generation>}, keyed by
+ * (world view, zone x, zone z, load generation). Every scene load gets a new load generation from {@link #begin}; its
+ * zones are published, or copied from the previous load when the client reuses them, and become current when the
+ * load is committed. A commit record tells the renderer to drop the world view's older zones, a zone record
+ * replaces an earlier record with the same key. The section's end offset is advanced with a release store after each
+ * record, so the renderer can tail the segment.
+ *
+ * When a record doesn't fit, the live records (committed and staged zones, and the last commit of each world view)
+ * are compacted into a new, larger segment under the next generation and the old one is released, like the frame
+ * segment. Scenes are loaded off the client thread while zones are rebuilt on it, so the writer methods synchronize.
+ */
+public class ZoneGeometry
+{
+    public static final int SEGMENT_MAGIC = 0x534F4547; // "GEOS"
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    public static final int RECORD_ZONE = 1;
+    public static final int RECORD_COMMIT = 2;
+
+    // segment sizes are rounded up to whole blocks
+    private static final int SEGMENT_BLOCK = 1 << 20;
+
+    // RLGeometrySection
+    private static final int GENERATION_OFFSET = 0;
+    private static final int END_OFFSET = 8;
+    private static final int RECORDS_OFFSET = 16;
+    private static final int SEGMENT_SIZE_OFFSET = 24;
+    public static final int SIZE = 64;
+
+    // RLGeometrySegment
+    private static final int SEGMENT_MAGIC_OFFSET = 0;
+    private static final int SEGMENT_GENERATION_OFFSET = 4;
+    private static final int SEGMENT_SIZE_FIELD_OFFSET = 8;
+    private static final int SEGMENT_HEADER_SIZE = 64;
+
+    // RLGeometryRecord
+    private static final int RECORD_LENGTH_OFFSET = 0;
+    private static final int RECORD_TYPE_OFFSET = 4;
+    private static final int RECORD_WORLD_VIEW_OFFSET = 8;
+    private static final int RECORD_ZONE_X_OFFSET = 12;
+    private static final int RECORD_ZONE_Z_OFFSET = 16;
+    private static final int RECORD_GENERATION_OFFSET = 20;
+    private static final int RECORD_VERTEX_SIZE_OFFSET = 24;
+    private static final int RECORD_OPAQUE_INTS_OFFSET = 28;
+    private static final int RECORD_ALPHA_INTS_OFFSET = 32;
+    private static final int RECORD_HEADER_SIZE = 40;
+
+    // key packing, see key()
+    private static final int MAX_WORLD_VIEW = (1 << 13) - 2;
+    private static final int MAX_ZONE = (1 << 9) - 1;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Fills a reserved zone record, e.g. by reading the zone's buffers back from the GPU.
+     */
+    public interface Source
+    {
+        /**
+         * @param opaque room for exactly the opaque ints, in segment memory
+         * @param alpha  room for exactly the alpha ints
+         */
+        void read(IntBuffer opaque, IntBuffer alpha);
+    }
+
+    private final ByteBuffer buf;
+    private final int base;
+    private final String regionName;
+
+    // live zone key -> record offset in the current segment
+    private final Map<Long, Integer> zones = new HashMap<>();
+    // world view -> committed load generation
+    private final Map<Integer, Integer> committed = new HashMap<>();
+
+    private SharedMemoryTransport segmentTransport;
+    private ByteBuffer segment;
+    private int generation;
+    private int segmentSize;
+    private int end;
+    private long records;
+    private int loads;
+    private boolean closed;
+
+    private volatile long bytesPublished;
+    private volatile long droppedZones;
+    private volatile int compactions;
+
+    public ZoneGeometry(ByteBuffer region, int base, String regionName)
+    {
+        if (region.capacity() < base + SIZE)
+            throw new IllegalArgumentException("Geometry section out of bounds: " + (base + SIZE) + " > " + region.capacity());
+        this.buf = region;
+        this.base = base;
+        this.regionName = regionName;
+    }
+
+    public static String segmentName(String regionName, int generation)
+    {
+        return regionName + ".geometry." + generation;
+    }
+
+    private static long key(int worldView, int zoneX, int zoneZ, int generation)
+    {
+        if (worldView < -1 || worldView > MAX_WORLD_VIEW || zoneX < 0 || zoneX > MAX_ZONE || zoneZ < 0 || zoneZ > MAX_ZONE)
+            throw new IllegalArgumentException("Zone out of range: " + worldView + "/" + zoneX + "/" + zoneZ);
+        return (long) (worldView + 1) << 50 | (long) zoneX << 41 | (long) zoneZ << 32 | (generation & 0xFFFFFFFFL);
+    }
+
+    private static int keyWorldView(long key)
+    {
+        return (int) (key >>> 50) - 1;
+    }
+
+    private static int keyGeneration(long key)
+    {
+        return (int) key;
+    }
+
+    private static long recordLength(long ints)
+    {
+        return (RECORD_HEADER_SIZE + ints * Integer.BYTES + 7) & ~7L;
+    }
+
+    /**
+     * Forget every zone and release the geometry segment. Only safe while no renderer is attached.
+     */
+    public synchronized void reset()
+    {
+        releaseSegment();
+        zones.clear();
+        committed.clear();
+        closed = false;
+        segment = null;
+        segmentSize = 0;
+        end = 0;
+        records = 0;
+        loads = 0;
+        bytesPublished = 0;
+        droppedZones = 0;
+        compactions = 0;
+        INT.setVolatile(buf, base + GENERATION_OFFSET, 0);
+        LONG.set(buf, base + END_OFFSET, 0L);
+        LONG.set(buf, base + RECORDS_OFFSET, 0L);
+        LONG.set(buf, base + SEGMENT_SIZE_OFFSET, 0L);
+    }
+
+    /**
+     * Start a scene load.
+     *
+     * @return the load generation to publish its zones under
+     */
+    public synchronized int begin()
+    {
+        return ++loads;
+    }
+
+    /**
+     * Publish a zone's vertex data, {@code position()} ints of each buffer from the start. Either may be null.
+     */
+    public boolean publish(int worldView, int zoneX, int zoneZ, int generation, int vertexSize, IntBuffer opaque, IntBuffer alpha)
+    {
+        return publish(worldView, zoneX, zoneZ, generation, vertexSize,
+                opaque != null ? opaque.position() : 0,
+                alpha != null ? alpha.position() : 0,
+                (o, a) ->
+                {
+                    if (opaque != null)
+                        o.put(opaque.duplicate().flip());
+                    if (alpha != null)
+                        a.put(alpha.duplicate().flip());
+                });
+    }
+
+    /**
+     * Reserve a zone record and have the source fill it.
+     *
+     * @return false if the record could not be stored
+     */
+    public synchronized boolean publish(int worldView, int zoneX, int zoneZ, int generation, int vertexSize,
+                                        int opaqueInts, int alphaInts, Source source)
+    {
+        if (closed)
+            return false;
+
+        final long key = key(worldView, zoneX, zoneZ, generation);
+        final long length = recordLength(opaqueInts + (long) alphaInts);
+        if (!reserve(length))
+        {
+            droppedZones++;
+            return false;
+        }
+
+        final int off = end;
+        writeHeader(off, (int) length, RECORD_ZONE, worldView, zoneX, zoneZ, generation);
+        INT.set(segment, off + RECORD_VERTEX_SIZE_OFFSET, vertexSize);
+        INT.set(segment, off + RECORD_OPAQUE_INTS_OFFSET, opaqueInts);
+        INT.set(segment, off + RECORD_ALPHA_INTS_OFFSET, alphaInts);
+        source.read(ints(off + RECORD_HEADER_SIZE, opaqueInts), ints(off + RECORD_HEADER_SIZE + opaqueInts * Integer.BYTES, alphaInts));
+
+        zones.put(key, off);
+        append((int) length);
+        return true;
+    }
+
+    /**
+     * Publish a zone the client kept from an earlier load under its new position and generation, from the record
+     * already in the segment.
+     *
+     * @return false if the earlier record isn't known
+     */
+    public synchronized boolean copy(int worldView, int fromX, int fromZ, int fromGeneration, int toX, int toZ, int toGeneration)
+    {
+        if (closed)
+            return false;
+
+        final long from = key(worldView, fromX, fromZ, fromGeneration);
+        final long to = key(worldView, toX, toZ, toGeneration);
+        Integer src = zones.get(from);
+        if (src == null)
+            return false;
+
+        final int length = (int) INT.get(segment, src + RECORD_LENGTH_OFFSET);
+        if (!reserve(length))
+        {
+            droppedZones++;
+            return false;
+        }
+        // compaction moves the source record
+        src = zones.get(from);
+
+        final int off = end;
+        segment.duplicate().position(off).put(segment.duplicate().position(src).limit(src + length));
+        INT.set(segment, off + RECORD_ZONE_X_OFFSET, toX);
+        INT.set(segment, off + RECORD_ZONE_Z_OFFSET, toZ);
+        INT.set(segment, off + RECORD_GENERATION_OFFSET, toGeneration);
+
+        zones.put(to, off);
+        append(length);
+        return true;
+    }
+
+    /**
+     * Make a load generation current for its world view, dropping the world view's older zones.
+     */
+    public synchronized void commit(int worldView, int generation)
+    {
+        if (closed)
+            return;
+
+        committed.put(worldView, generation);
+        for (Iterator<Long> it = zones.keySet().iterator(); it.hasNext(); )
+        {
+            final long key = it.next();
+            if (keyWorldView(key) == worldView && keyGeneration(key) - generation < 0)
+                it.remove();
+        }
+        if (reserve(RECORD_HEADER_SIZE))
+            writeCommit(worldView, generation);
+        else
+            droppedZones++;
+    }
+
+    /**
+     * Drop every zone of a world view, e.g. when it despawns.
+     */
+    public synchronized void remove(int worldView)
+    {
+        commit(worldView, begin());
+        committed.remove(worldView);
+    }
+
+    private IntBuffer ints(int off, int count)
+    {
+        return segment.duplicate()
+                .position(off)
+                .limit(off + count * Integer.BYTES)
+                .slice()
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer();
+    }
+
+    private void writeHeader(int off, int length, int type, int worldView, int zoneX, int zoneZ, int generation)
+    {
+        INT.set(segment, off + RECORD_LENGTH_OFFSET, length);
+        INT.set(segment, off + RECORD_TYPE_OFFSET, type);
+        INT.set(segment, off + RECORD_WORLD_VIEW_OFFSET, worldView);
+        INT.set(segment, off + RECORD_ZONE_X_OFFSET, zoneX);
+        INT.set(segment, off + RECORD_ZONE_Z_OFFSET, zoneZ);
+        INT.set(segment, off + RECORD_GENERATION_OFFSET, generation);
+        INT.set(segment, off + RECORD_VERTEX_SIZE_OFFSET, 0);
+        INT.set(segment, off + RECORD_OPAQUE_INTS_OFFSET, 0);
+        INT.set(segment, off + RECORD_ALPHA_INTS_OFFSET, 0);
+    }
+
+    private void writeCommit(int worldView, int generation)
+    {
+        writeHeader(end, RECORD_HEADER_SIZE, RECORD_COMMIT, worldView, 0, 0, generation);
+        append(RECORD_HEADER_SIZE);
+    }
+
+    /**
+     * Publish the record at the end of the segment.
+     */
+    private void append(int length)
+    {
+        end += length;
+        records++;
+        bytesPublished += length;
+        LONG.set(buf, base + RECORDS_OFFSET, records);
+        LONG.setRelease(buf, base + END_OFFSET, (long) end);
+    }
+
+    /**
+     * Make room for a record at the end of the segment, compacting into a new segment if needed.
+     */
+    private boolean reserve(long length)
+    {
+        if (segment != null && end + length <= segmentSize)
+            return true;
+
+        long live = SEGMENT_HEADER_SIZE + (long) committed.size() * RECORD_HEADER_SIZE;
+        for (int off : zones.values())
+            live += (int) INT.get(segment, off + RECORD_LENGTH_OFFSET);
+
+        final long needed = live + length;
+        long size = Math.max(DEFAULT_SEGMENT_SIZE, (needed * 2 + SEGMENT_BLOCK - 1) / SEGMENT_BLOCK * SEGMENT_BLOCK);
+        if (size > Integer.MAX_VALUE)
+            size = needed;
+        if (size > Integer.MAX_VALUE)
+            return false;
+        return compact((int) size);
+    }
+
+    /**
+     * Map a new segment under the next generation and copy the live records into it. The renderer notices the new
+     * generation, maps the new segment and rebuilds its zones from it.
+     */
+    private boolean compact(int size)
+    {
+        final int nextGeneration = generation + 1;
+        final String name = segmentName(regionName, nextGeneration);
+        final SharedMemoryTransport transport = SharedMemoryTransport.forName(name);
+        final ByteBuffer next;
+        try
+        {
+            next = transport.open(name, size);
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+
+        INT.set(next, SEGMENT_GENERATION_OFFSET, nextGeneration);
+        LONG.set(next, SEGMENT_SIZE_FIELD_OFFSET, (long) size);
+        INT.setRelease(next, SEGMENT_MAGIC_OFFSET, SEGMENT_MAGIC);
+
+        final ByteBuffer prev = segment;
+        segment = next;
+        end = SEGMENT_HEADER_SIZE;
+        records = 0;
+        for (Map.Entry<Long, Integer> entry : zones.entrySet())
+        {
+            final int src = entry.getValue();
+            final int length = (int) INT.get(prev, src + RECORD_LENGTH_OFFSET);
+            next.duplicate().position(end).put(prev.duplicate().position(src).limit(src + length));
+            entry.setValue(end);
+            end += length;
+            records++;
+        }
+        for (Map.Entry<Integer, Integer> entry : committed.entrySet())
+        {
+            writeHeader(end, RECORD_HEADER_SIZE, RECORD_COMMIT, entry.getKey(), 0, 0, entry.getValue());
+            end += RECORD_HEADER_SIZE;
+            records++;
+        }
+
+        // Unpublish before switching generation, so a renderer never pairs the old end with the new segment
+        INT.setVolatile(buf, base + GENERATION_OFFSET, 0);
+        LONG.set(buf, base + SEGMENT_SIZE_OFFSET, (long) size);
+        LONG.set(buf, base + RECORDS_OFFSET, records);
+        LONG.set(buf, base + END_OFFSET, (long) end);
+        INT.setVolatile(buf, base + GENERATION_OFFSET, nextGeneration);
+
+        releaseSegment();
+        segmentTransport = transport;
+        generation = nextGeneration;
+        segmentSize = size;
+        if (prev != null)
+            compactions++;
+        return true;
+    }
+
+    private void releaseSegment()
+    {
+        if (segmentTransport != null)
+        {
+            segmentTransport.close();
+            segmentTransport.unlink();
+            segmentTransport = null;
+        }
+    }
+
+    /**
+     * Release the geometry segment. Later publishes, copies and commits do nothing, since a scene load on another
+     * thread can still reach them while the bridge shuts down.
+     */
+    public synchronized void close()
+    {
+        closed = true;
+        releaseSegment();
+        zones.clear();
+        committed.clear();
+        segment = null;
+        segmentSize = 0;
+    }
+
+    /**
+     * Zones a renderer rebuilding from the current segment would hold, committed or staged.
+     */
+    public synchronized int getZones()
+    {
+        return zones.size();
+    }
+
+    public synchronized int getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /**
+     * Record bytes appended, not counting compaction.
+     */
+    public long getBytesPublished()
+    {
+        return bytesPublished;
+    }
+
+    /**
+     * Zone and commit records that didn't fit in the largest segment or whose segment couldn't be mapped.
+     */
+    public long getDroppedZones()
+    {
+        return droppedZones;
+    }
+
+    /**
+     * Times the live records were moved to a new segment.
+     */
+    public int getCompactions()
+    {
+        return compactions;
+    }
+}
@@ -1,70 +1,22 @@
 // rl_gpushared_shim.cpp
-#include <atomic>
 #include <jni.h>
 #include <windows.h>
 #include <cstdint>
+#include <string>
+#include "rl_gpushared_shim.h"
 
 extern "C" {
-// POD structs with fixed layout for predictable offsets
-#pragma pack(push, 1)
-struct RLCameraStatus {
-    int x;
-    int y;
-    int z;
-    int pitch;
-    int yaw;
-    int scale;
+// Per-mapping state, handed to Java as the nativeHandle so several regions can be open in one process
+struct NativeRegion {
+    HANDLE mapHandle = nullptr;
+    uint8_t *base = nullptr; // base pointer to mapped view
+    uint64_t size = 0; // bytes mapped, the layout is owned by SharedRegionLayout.java
+    HANDLE events[RL_SIGNAL_CHANNELS] = {}; // auto-reset events named "<name>.signal<channel>"
 };
 
-struct RLBufferInfo {
-    int width{};
-    int height{};
-    bool ready{};
-    bool consumed = true;
-
-    //dummy padding so pixels is 4-byte aligned
-    uint8_t dummy{};
-    uint8_t dummy2{};
-
-    uint8_t pixels[3840 * 2160 * 4]{};
-};
-
-struct SResolution {
-    int width;
-    int height;
-    bool consumed = true;
-};
-
-struct SMouseMove {
-    int x;
-    int y;
-    bool consumed = true;
-};
-
-struct SMousePress {
-    int button;
-    bool consumed = true;
-};
-
-struct SMouseRelease {
-    int button;
-    bool consumed = true;
-};
-
-// Shared region layout (contiguous)
-struct FixedSharedMemoryRegionPOD {
-    RLCameraStatus camera{};
-    RLBufferInfo front_buffer;
-    SResolution resolution;
-    SMouseMove mouse_move;
-    SMousePress mouse_press;
-    SMouseRelease mouse_release;
-};
-#pragma pack(pop)
-
-// Globals for mapping
-static HANDLE gMapHandle = nullptr;
-static uint8_t *gBase = nullptr; // base pointer to mapped view
+static inline NativeRegion *from_handle(jlong handle) {
+    return reinterpret_cast<NativeRegion *>(handle);
+}
 
 // Utility: throw java.io.IOException with message
 static void throw_io_exception(JNIEnv *env, const char *msg) {
@@ -73,40 +25,42 @@ static void throw_io_exception(JNIEnv *env, const char *msg) {
         env->ThrowNew(exClass, msg);
 }
 
-static uint8_t *shmPtr = nullptr;
-
-/**
- * ptr_camera MUST be first in Shared Memory as it sets base [shmPtr]
- */
-static inline RLCameraStatus *ptr_camera() {
-    shmPtr = gBase + sizeof(RLCameraStatus);
-    return reinterpret_cast<RLCameraStatus *>(shmPtr - sizeof(RLCameraStatus));
-}
-static inline RLBufferInfo *ptr_frame_buffer() {
-    shmPtr += sizeof(RLBufferInfo);
-    return reinterpret_cast<RLBufferInfo *>(shmPtr - sizeof(RLBufferInfo));
-}
-static inline SResolution *ptr_resolution() {
-    shmPtr += sizeof(SResolution);
-    return reinterpret_cast<SResolution *>(shmPtr - sizeof(SResolution));
-}
-static inline SMouseMove *ptr_mouse_move() {
-    shmPtr += sizeof(SMouseMove);
-    return reinterpret_cast<SMouseMove *>(shmPtr - sizeof(SMouseMove));
-}
-static inline SMousePress *ptr_mouse_press() {
-    shmPtr += sizeof(SMousePress);
-    return reinterpret_cast<SMousePress *>(shmPtr - sizeof(SMousePress));
+static void close_region(NativeRegion *region) {
+    for (HANDLE &event : region->events) {
+        if (event) {
+            CloseHandle(event);
+            event = nullptr;
+        }
+    }
+    if (region->base) {
+        UnmapViewOfFile(region->base);
+        region->base = nullptr;
+        region->size = 0;
+    }
+    if (region->mapHandle) {
+        CloseHandle(region->mapHandle);
+        region->mapHandle = nullptr;
+    }
 }
-static inline SMouseRelease *ptr_mouse_release() {
-    shmPtr += sizeof(SMouseRelease);
-    return reinterpret_cast<SMouseRelease *>(shmPtr - sizeof(SMouseRelease));
+
+static bool open_events(NativeRegion *region, const char *name) {
+    for (int channel = 0; channel < RL_SIGNAL_CHANNELS; channel++) {
+        std::string eventName = std::string(name) + ".signal" + std::to_string(channel);
+        region->events[channel] = CreateEventA(nullptr, FALSE, FALSE, eventName.c_str());
+        if (!region->events[channel])
+            return false;
+    }
+    return true;
 }
 
 // JNI implementations
 
-JNIEXPORT jlong JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_openSharedMemory
-(JNIEnv *env, jobject /*this*/, jstring name) {
+JNIEXPORT jlong JNICALL Java_net_runelite_client_plugins_gpushared_shim_JniTransport_openSharedMemory
+(JNIEnv *env, jobject /*this*/, jstring name, jlong size) {
+    if (size <= 0) {
+        throw_io_exception(env, "Shared memory size must be positive");
+        return 0;
+    }
     if (name == nullptr) {
         throw_io_exception(env, "Shared memory name is null");
         return 0;
@@ -118,15 +72,17 @@ JNIEXPORT jlong JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMe
         return 0;
     }
 
+    NativeRegion *region = new NativeRegion();
+
     // Try open first
-    gMapHandle = OpenFileMappingA(FILE_MAP_ALL_ACCESS, FALSE, cname);
+    region->mapHandle = OpenFileMappingA(FILE_MAP_ALL_ACCESS, FALSE, cname);
     bool created = false;
-    if (!gMapHandle) {
+    if (!region->mapHandle) {
         // Create mapping
-        DWORD sizeLow = sizeof(FixedSharedMemoryRegionPOD) & 0xFFFFFFFFULL;
-        DWORD sizeHigh = sizeof(FixedSharedMemoryRegionPOD) >> 32 & 0xFFFFFFFFULL;
+        DWORD sizeLow = static_cast<uint64_t>(size) & 0xFFFFFFFFULL;
+        DWORD sizeHigh = static_cast<uint64_t>(size) >> 32 & 0xFFFFFFFFULL;
 
-        gMapHandle = CreateFileMappingA(
+        region->mapHandle = CreateFileMappingA(
             INVALID_HANDLE_VALUE,
             nullptr,
             PAGE_READWRITE,
@@ -135,7 +91,8 @@ JNIEXPORT jlong JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMe
             cname
         );
 
-        if (!gMapHandle) {
+        if (!region->mapHandle) {
+            delete region;
             env->ReleaseStringUTFChars(name, cname);
             throw_io_exception(env, "Failed to create shared memory mapping");
             return 0;
@@ -145,64 +102,60 @@ JNIEXPORT jlong JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMe
     }
 
     // Map view
-    void *mapped = MapViewOfFile(gMapHandle, FILE_MAP_ALL_ACCESS, 0, 0, sizeof(FixedSharedMemoryRegionPOD));
+    void *mapped = MapViewOfFile(region->mapHandle, FILE_MAP_ALL_ACCESS, 0, 0, static_cast<size_t>(size));
     if (!mapped) {
-        CloseHandle(gMapHandle);
-        gMapHandle = nullptr;
+        close_region(region);
+        delete region;
         env->ReleaseStringUTFChars(name, cname);
         throw_io_exception(env, "Failed to map shared memory view");
         return 0;
     }
 
-    gBase = reinterpret_cast<uint8_t *>(mapped);
+    region->base = reinterpret_cast<uint8_t *>(mapped);
+    region->size = static_cast<uint64_t>(size);
+
+    if (!open_events(region, cname)) {
+        close_region(region);
+        delete region;
+        env->ReleaseStringUTFChars(name, cname);
+        throw_io_exception(env, "Failed to create signal events");
+        return 0;
+    }
 
     // If created new region, zero-init metadata and buffers to deterministic state
     if (created)
-        std::memset(gBase, 0, sizeof(FixedSharedMemoryRegionPOD));
+        std::memset(region->base, 0, region->size);
     env->ReleaseStringUTFChars(name, cname);
 
-    // Return base pointer as jlong for convenience (Java may ignore it)
-    return reinterpret_cast<jlong>(gBase);
+    return reinterpret_cast<jlong>(region);
 }
-JNIEXPORT void JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_closeSharedMemory
-(JNIEnv * /*env*/, jobject /*this*/, jlong /*handle*/) {
-    if (gBase) {
-        UnmapViewOfFile(gBase);
-        gBase = nullptr;
-    }
-    if (gMapHandle) {
-        CloseHandle(gMapHandle);
-        gMapHandle = nullptr;
+JNIEXPORT void JNICALL Java_net_runelite_client_plugins_gpushared_shim_JniTransport_closeSharedMemory
+(JNIEnv * /*env*/, jobject /*this*/, jlong handle) {
+    NativeRegion *region = from_handle(handle);
+    if (region) {
+        close_region(region);
+        delete region;
     }
 }
-JNIEXPORT jobject JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_mapCamera
-(JNIEnv *env, jobject /*this*/, jlong /*handle*/) {
-    void *ptr = ptr_camera();
-    return env->NewDirectByteBuffer(ptr, sizeof(RLCameraStatus));
-}
-JNIEXPORT jobject JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_mapFrameBuffer
-(JNIEnv *env, jobject /*this*/, jlong /*handle*/) {
-    void *ptr = ptr_frame_buffer();
-    return env->NewDirectByteBuffer(ptr, sizeof(RLBufferInfo));
-}
-JNIEXPORT jobject JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_mapResolution
-(JNIEnv *env, jobject /*this*/, jlong /*handle*/) {
-    void *ptr = ptr_resolution();
-    return env->NewDirectByteBuffer(ptr, sizeof(SResolution));
-}
-JNIEXPORT jobject JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_mapMouseMove
-(JNIEnv *env, jobject /*this*/, jlong /*handle*/) {
-    void *ptr = ptr_mouse_move();
-    return env->NewDirectByteBuffer(ptr, sizeof(SMouseMove));
+JNIEXPORT jobject JNICALL Java_net_runelite_client_plugins_gpushared_shim_JniTransport_mapRegion
+(JNIEnv *env, jobject /*this*/, jlong handle) {
+    NativeRegion *region = from_handle(handle);
+    if (!region || !region->base) {
+        throw_io_exception(env, "Shared memory is not open");
+        return nullptr;
+    }
+    return env->NewDirectByteBuffer(region->base, static_cast<jlong>(region->size));
 }
-JNIEXPORT jobject JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_mapMousePress
-(JNIEnv *env, jobject /*this*/, jlong /*handle*/) {
-    void *ptr = ptr_mouse_press();
-    return env->NewDirectByteBuffer(ptr, sizeof(SMousePress));
+JNIEXPORT void JNICALL Java_net_runelite_client_plugins_gpushared_shim_JniTransport_signalEvent
+(JNIEnv * /*env*/, jobject /*this*/, jlong handle, jint channel) {
+    NativeRegion *region = from_handle(handle);
+    if (region && channel >= 0 && channel < RL_SIGNAL_CHANNELS && region->events[channel])
+        SetEvent(region->events[channel]);
 }
-JNIEXPORT jobject JNICALL Java_net_runelite_client_plugins_gpushared_shim_SharedMemoryBridge_mapMouseRelease
-(JNIEnv *env, jobject /*this*/, jlong /*handle*/) {
-    void *ptr = ptr_mouse_release();
-    return env->NewDirectByteBuffer(ptr, sizeof(SMouseRelease));
+JNIEXPORT void JNICALL Java_net_runelite_client_plugins_gpushared_shim_JniTransport_waitEvent
+(JNIEnv * /*env*/, jobject /*this*/, jlong handle, jint channel, jint timeoutMillis) {
+    NativeRegion *region = from_handle(handle);
+    if (region && channel >= 0 && channel < RL_SIGNAL_CHANNELS && region->events[channel])
+        WaitForSingleObject(region->events[channel], static_cast<DWORD>(timeoutMillis));
 }
 } // extern "C"
@@ -0,0 +1,90 @@
+package net.runelite.client.plugins.gpushared.shim;
+
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Standalone check that the per-frame poll and the steady-state synchronous publish path allocate nothing per call,
+ * measured with {@link ThreadMXBean#getThreadAllocatedBytes}. Run with the shim classes on the class path; exits
+ * non-zero on failure. The registry is removed afterwards unless it existed before, when other clients may use it.
+ */
+public class AllocationCheck
+{
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 64;
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static int sink;
+
+    public static void main(String[] args) throws IOException
+    {
+        if (!THREADS.isThreadAllocatedMemorySupported())
+        {
+            System.out.println("SKIP thread allocation measurement not supported");
+            return;
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        final Path registry = MappedFileTransport.path(SharedMemoryRegistry.NAME);
+        final boolean registryExisted = Files.exists(registry);
+        final SharedMemoryBridge bridge = new SharedMemoryBridge();
+        bridge.init("URRL.alloccheck-" + ProcessHandle.current().pid());
+        boolean ok;
+        try
+        {
+            final InputRing.Handler handler = (type, x, y, button, modifiers, when) -> sink += x;
+            ok = check("poll", WARMUP, ITERATIONS, () ->
+            {
+                sink += bridge.getResolution().width;
+                bridge.drainInput(handler);
+            });
+
+            final int[][] frames = new int[2][WIDTH * HEIGHT];
+            frames[1][WIDTH + 1] = 0xFF00FF00;
+            final int[] n = new int[1];
+            ok &= check("publish", WARMUP, ITERATIONS, () ->
+            {
+                // alternate between two frames so every call publishes a changed tile
+                final int[] frame = frames[n[0]++ & 1];
+                bridge.setCamera(n[0], 0, 0, 0, 0, 0);
+                bridge.setFrameBuffer(WIDTH, HEIGHT, frame);
+            });
+        }
+        finally
+        {
+            final SharedMemoryTransport transport = bridge.transport;
+            bridge.shutdown();
+            transport.unlink();
+            if (!registryExisted)
+                Files.deleteIfExists(registry);
+        }
+
+        System.out.println(ok ? "OK" : "FAIL");
+        if (!ok)
+            System.exit(1);
+    }
+
+    private static boolean check(String name, int warmup, int iterations, Runnable step)
+    {
+        for (int i = 0; i < warmup; i++)
+            step.run();
+
+        final long thread = Thread.currentThread().getId();
+        final long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++)
+            step.run();
+        final long allocated = THREADS.getThreadAllocatedBytes(thread) - before;
+
+        // the smallest object is 16 bytes, so less than a byte per call means nothing is allocated per call; the
+        // JVM occasionally allocates a few hundred bytes on the thread itself (compilation, safepoints)
+        final boolean ok = allocated < iterations;
+        System.out.println((ok ? "PASS " : "FAIL ") + name + ": " + allocated + " bytes over " + iterations + " calls");
+        return ok;
+    }
+}